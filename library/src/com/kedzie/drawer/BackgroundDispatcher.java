@@ -0,0 +1,329 @@
+package com.kedzie.drawer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.kedzie.drawer.DraggedDrawer.*;
+
+/**
+ * Delivers drawer events to {@link DraggedDrawer#LISTEN_BACKGROUND} listeners off the UI thread.
+ * Events are queued in order and drained by a single task on the executor.  A slide event only
+ * marks its drawer in the queue; further slides before the mark is reached just update the
+ * offset, so a busy listener gets the latest offset instead of a backlog.  Any other event for
+ * the drawer ends the mark, so slides after it are never delivered before it.
+ * <p>
+ * At most {@link #MAX_QUEUED} events wait for slow listeners.  With the queue full, a state
+ * event replaces a state event of the same drawer (or of the layout) at the end of the queue,
+ * so listeners see the latest state; other events are dropped, with a warning once per overflow.
+ * When the executor rejects the drain task, it is retried after {@link #RETRY_DELAY} ms.
+ */
+class BackgroundDispatcher {
+    private static final String TAG = "BackgroundDispatcher";
+
+    private static final int EVENT_SLIDE = 0;
+    private static final int EVENT_OPENING = 1;
+    private static final int EVENT_OPENED = 2;
+    private static final int EVENT_CLOSED = 3;
+    private static final int EVENT_DRAWER_STATE = 4;
+    private static final int EVENT_LAYOUT_STATE = 5;
+    /** Closed, for the drawer's own listeners only */
+    private static final int EVENT_DRAWER_CLOSED = 6;
+    /** Closed, for the layout's listeners only */
+    private static final int EVENT_LAYOUT_CLOSED = 7;
+
+    /** Events delivered before the drain task yields the executor to other layouts */
+    private static final int DRAIN_BATCH = 64;
+    /** Drain tasks the default executor queues, at most one per layout */
+    private static final int DEFAULT_QUEUE_CAPACITY = 16;
+    /** Events waiting for delivery, per layout */
+    static final int MAX_QUEUED = 128;
+    /** Delay before a drain task the executor rejected is offered again, in ms */
+    static final int RETRY_DELAY = 16;
+
+    private static Executor sDefaultExecutor;
+
+    /**
+     * A queued event, recycled once delivered
+     */
+    private static final class Event {
+        int type;
+        DraggedDrawer drawer;
+        int state;
+        float offset;
+    }
+
+    private final ListenerRegistry<DragLayout.DrawerListener> mListeners;
+    private Executor mExecutor;
+
+    /** Guarded by this */
+    private final ArrayDeque<Event> mQueue = new ArrayDeque<Event>();
+    private final ArrayList<Event> mPool = new ArrayList<Event>();
+    /** Slide marks still queued, by drawer */
+    private final HashMap<DraggedDrawer, Event> mPendingSlides = new HashMap<DraggedDrawer, Event>();
+    private boolean mScheduled;
+    /** The executor rejected the drain task and has not accepted it since.  Guarded by this */
+    private boolean mRejected;
+    /** Events were dropped since the queue was last below capacity.  Guarded by this */
+    private boolean mOverflowed;
+
+    private final Handler mRetryHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mRetry = new Runnable() {
+        @Override
+        public void run() {
+            synchronized(BackgroundDispatcher.this) {
+                mScheduled = false;
+            }
+            schedule();
+        }
+    };
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param listeners the layout's listeners
+     */
+    BackgroundDispatcher(ListenerRegistry<DragLayout.DrawerListener> listeners) {
+        mListeners = listeners;
+    }
+
+    void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    Executor getExecutor() {
+        return mExecutor!=null ? mExecutor : getDefaultExecutor();
+    }
+
+    /**
+     * A single background thread with a bounded queue, shared by all layouts
+     */
+    private static synchronized Executor getDefaultExecutor() {
+        if(sDefaultExecutor==null) {
+            sDefaultExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(DEFAULT_QUEUE_CAPACITY), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "DrawerListeners");
+                }
+            });
+        }
+        return sDefaultExecutor;
+    }
+
+    void postSlide(DraggedDrawer drawer, float offset) {
+        synchronized(this) {
+            final Event pending = mPendingSlides.get(drawer);
+            if(pending!=null) {
+                pending.offset = offset;
+                return;
+            }
+            if(isFull())
+                return;
+            final Event event = obtain(EVENT_SLIDE, drawer);
+            event.offset = offset;
+            mPendingSlides.put(drawer, event);
+            mQueue.add(event);
+        }
+        schedule();
+    }
+
+    void postOpening(DraggedDrawer drawer) {
+        post(EVENT_OPENING, drawer, 0);
+    }
+
+    void postOpened(DraggedDrawer drawer) {
+        post(EVENT_OPENED, drawer, 0);
+    }
+
+    void postClosed(DraggedDrawer drawer) {
+        post(EVENT_CLOSED, drawer, 0);
+    }
+
+    void postDrawerClosed(DraggedDrawer drawer) {
+        post(EVENT_DRAWER_CLOSED, drawer, 0);
+    }
+
+    void postLayoutClosed(DraggedDrawer drawer) {
+        post(EVENT_LAYOUT_CLOSED, drawer, 0);
+    }
+
+    void postDrawerState(DraggedDrawer drawer, int state) {
+        post(EVENT_DRAWER_STATE, drawer, state);
+    }
+
+    void postLayoutState(int state) {
+        post(EVENT_LAYOUT_STATE, null, state);
+    }
+
+    private void post(int type, DraggedDrawer drawer, int state) {
+        synchronized(this) {
+            //slides after this event must not be folded into a mark ahead of it
+            if(drawer!=null)
+                mPendingSlides.remove(drawer);
+            if(isFull()) {
+                //listeners only need the latest of consecutive states
+                final Event last = mQueue.peekLast();
+                if((type==EVENT_DRAWER_STATE || type==EVENT_LAYOUT_STATE) && last.type==type && last.drawer==drawer)
+                    last.state = state;
+                return;
+            }
+            final Event event = obtain(type, drawer);
+            event.state = state;
+            mQueue.add(event);
+        }
+        schedule();
+    }
+
+    /**
+     * Check the queue has room, warning once per overflow if it doesn't.  Called holding this.
+     * @return <code>true</code> if an event must be dropped
+     */
+    private boolean isFull() {
+        if(mQueue.size()<MAX_QUEUED) {
+            mOverflowed = false;
+            return false;
+        }
+        if(!mOverflowed)
+            Log.w(TAG, "Background drawer listeners fell " + MAX_QUEUED + " events behind, dropping events");
+        mOverflowed = true;
+        return true;
+    }
+
+    private Event obtain(int type, DraggedDrawer drawer) {
+        final Event event = mPool.isEmpty() ? new Event() : mPool.remove(mPool.size()-1);
+        event.type = type;
+        event.drawer = drawer;
+        return event;
+    }
+
+    private void schedule() {
+        synchronized(this) {
+            if(mScheduled)
+                return;
+            mScheduled = true;
+        }
+        try {
+            getExecutor().execute(mDrain);
+            synchronized(this) {
+                mRejected = false;
+            }
+        } catch(RejectedExecutionException e) {
+            //the events stay queued until the retry, which keeps mScheduled set meanwhile; warn once per overflow
+            final boolean first;
+            synchronized(this) {
+                first = !mRejected;
+                mRejected = true;
+            }
+            if(first)
+                Log.w(TAG, "Background listener executor is full, delaying events");
+            mRetryHandler.postDelayed(mRetry, RETRY_DELAY);
+        }
+    }
+
+    private void drain() {
+        for(int i=0; i<DRAIN_BATCH; i++) {
+            final int type;
+            final DraggedDrawer drawer;
+            final int state;
+            final float offset;
+            synchronized(this) {
+                final Event event = mQueue.poll();
+                if(event==null) {
+                    mScheduled = false;
+                    return;
+                }
+                if(event.type==EVENT_SLIDE && mPendingSlides.get(event.drawer)==event)
+                    mPendingSlides.remove(event.drawer);
+                type = event.type;
+                drawer = event.drawer;
+                state = event.state;
+                offset = event.offset;
+                event.drawer = null;
+                mPool.add(event);
+            }
+            try {
+                deliver(type, drawer, state, offset);
+            } catch(RuntimeException e) {
+                Log.e(TAG, "Background drawer listener failed", e);
+            }
+        }
+        //let other layouts sharing the executor through
+        synchronized(this) {
+            mScheduled = false;
+        }
+        schedule();
+    }
+
+    private void deliver(int type, DraggedDrawer drawer, int state, float offset) {
+        final ListenerRegistry.Entry<DragLayout.DrawerListener>[] listeners = mListeners.entries();
+        final ListenerRegistry.Entry<DraggedDrawer.DrawerListener>[] drawerListeners = drawer!=null ? drawer.mListeners.entries() : null;
+        switch(type) {
+            case EVENT_SLIDE:
+                for(int i=0; i<listeners.length; i++)
+                    if(listeners[i].acceptsInBackground(LISTEN_SLIDE))
+                        listeners[i].listener.onDrawerSlide(drawer, offset);
+                for(int i=0; i<drawerListeners.length; i++)
+                    if(drawerListeners[i].acceptsInBackground(LISTEN_SLIDE))
+                        drawerListeners[i].listener.onDrawerSlide(offset);
+                break;
+            case EVENT_OPENING:
+                for(int i=0; i<listeners.length; i++)
+                    if(listeners[i].acceptsInBackground(LISTEN_OPENING))
+                        listeners[i].listener.onDrawerOpening(drawer);
+                break;
+            case EVENT_OPENED:
+                for(int i=0; i<listeners.length; i++)
+                    if(listeners[i].acceptsInBackground(LISTEN_OPENED))
+                        listeners[i].listener.onDrawerOpened(drawer);
+                for(int i=0; i<drawerListeners.length; i++)
+                    if(drawerListeners[i].acceptsInBackground(LISTEN_OPENED))
+                        drawerListeners[i].listener.onDrawerOpened();
+                break;
+            case EVENT_CLOSED:
+            case EVENT_DRAWER_CLOSED:
+            case EVENT_LAYOUT_CLOSED:
+                if(type!=EVENT_DRAWER_CLOSED)
+                    for(int i=0; i<listeners.length; i++)
+                        if(listeners[i].acceptsInBackground(LISTEN_CLOSED))
+                            listeners[i].listener.onDrawerClosed(drawer);
+                if(type!=EVENT_LAYOUT_CLOSED)
+                    for(int i=0; i<drawerListeners.length; i++)
+                        if(drawerListeners[i].acceptsInBackground(LISTEN_CLOSED))
+                            drawerListeners[i].listener.onDrawerClosed();
+                break;
+            case EVENT_DRAWER_STATE:
+                for(int i=0; i<drawerListeners.length; i++)
+                    if(drawerListeners[i].acceptsInBackground(LISTEN_STATE))
+                        drawerListeners[i].listener.onDrawerStateChanged(state);
+                break;
+            case EVENT_LAYOUT_STATE:
+                for(int i=0; i<listeners.length; i++)
+                    if(listeners[i].acceptsInBackground(LISTEN_STATE))
+                        listeners[i].listener.onDrawerStateChanged(state);
+                break;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.kedzie.drawer;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * {@link FrameSource} following the display's vsync through the {@link Choreographer}
+ * of the thread it is created on.
+ */
+class ChoreographerFrameSource implements FrameSource, Choreographer.FrameCallback {
+
+    /** Obtained on first use, so the source can be created off the UI thread */
+    private Choreographer mChoreographer;
+    private final ArrayList<Callback> mPending = new ArrayList<Callback>();
+    private final ArrayList<Callback> mRunning = new ArrayList<Callback>();
+
+    @Override
+    public long now() {
+        return System.nanoTime()/1000000;
+    }
+
+    @Override
+    public void postFrameCallback(Callback callback) {
+        if(mPending.contains(callback))
+            return;
+        if(mPending.isEmpty()) {
+            if(mChoreographer==null)
+                mChoreographer = Choreographer.getInstance();
+            mChoreographer.postFrameCallback(this);
+        }
+        mPending.add(callback);
+    }
+
+    @Override
+    public void removeFrameCallback(Callback callback) {
+        if(mPending.remove(callback) && mPending.isEmpty())
+            mChoreographer.removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        //callbacks may post themselves again for the next frame
+        //copied by index, addAll() would allocate an array
+        for(int i=0; i<mPending.size(); i++)
+            mRunning.add(mPending.get(i));
+        mPending.clear();
+        final long frameTime = frameTimeNanos/1000000;
+        for(int i=0; i<mRunning.size(); i++)
+            mRunning.get(i).doFrame(frameTime);
+        mRunning.clear();
+    }
+}
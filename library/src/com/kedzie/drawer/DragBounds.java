@@ -0,0 +1,43 @@
+package com.kedzie.drawer;
+
+/**
+ * Open and closed position of one drawer along its drag axis, taken from its
+ * {@link OrientationPolicy} whenever the drawer is laid out.  The drag callbacks clamp positions
+ * and turn them into slide offsets with these instead of redoing the policy math for every event.
+ */
+final class DragBounds {
+    private int mClosed;
+    private int mMin;
+    private int mMax;
+    private int mContentSize;
+    private int mOpenDirection;
+
+    /**
+     * @param policy        the drawer's policy
+     * @param size          drawer size along the drag axis, including the handle
+     * @param handleSize    handle size along the drag axis
+     * @param parentSize    layout size along the drag axis
+     */
+    void update(OrientationPolicy policy, int size, int handleSize, int parentSize) {
+        final int open = policy.getOpenPosition(size, parentSize);
+        mClosed = policy.getClosedPosition(size, handleSize, parentSize);
+        mMin = Math.min(open, mClosed);
+        mMax = Math.max(open, mClosed);
+        mContentSize = size-handleSize;
+        mOpenDirection = policy.getOpenDirection();
+    }
+
+    /**
+     * Bound the position of a dragged drawer between open and closed
+     */
+    int clamp(int position) {
+        return Math.max(mMin, Math.min(position, mMax));
+    }
+
+    /**
+     * @return slide offset at the position, the same as {@link OrientationPolicy#getOffsetForPosition(int, int, int, int)}
+     */
+    float getOffset(int position) {
+        return (float) (mOpenDirection*(position-mClosed)) / mContentSize;
+    }
+}
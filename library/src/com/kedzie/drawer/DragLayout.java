@@ -1,14 +1,21 @@
 package com.kedzie.drawer;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.v4.view.KeyEventCompat;
 import android.support.v4.view.MotionEventCompat;
-import android.support.v4.view.ViewCompat;
 import android.support.v4.view.ViewGroupCompat;
 import android.support.v4.widget.ViewDragHelper;
 import android.util.AttributeSet;
@@ -22,8 +29,11 @@ import android.view.accessibility.AccessibilityEvent;
 import android.widget.FrameLayout;
 import android.widget.RelativeLayout;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.kedzie.drawer.DraggedDrawer.*;
 
@@ -86,6 +96,25 @@ public class DragLayout extends RelativeLayout {
         @Override public void onDrawerOpening(View drawerView) {}
     }
 
+    /**
+     * Receives periodic snapshots of a layout's {@link DrawerMetrics}
+     */
+    public interface MetricsSink {
+
+        /**
+         * Called on the UI thread at the interval given to {@link DragLayout#setMetricsSink(MetricsSink, long)}.
+         * @param metrics   counters since the last reset.  Reused for the next report; copy to keep.
+         */
+        public void onMetrics(DrawerMetrics metrics);
+    }
+
+    /** Opening or dragging a drawer closes every other drawer */
+    public static final int EXCLUSIVE_ALL = 0;
+    /** Opening or dragging a drawer closes the drawers moving along the same axis, i.e. left and right */
+    public static final int EXCLUSIVE_AXIS = 1;
+    /** Drawers open and move independently */
+    public static final int EXCLUSIVE_NONE = 2;
+
     /**
      * Multiplier for how sensitive the drag detection should be.
      * Larger values are more sensitive. 1.0f is normal.
@@ -94,12 +123,43 @@ public class DragLayout extends RelativeLayout {
 
     private static final int DEFAULT_SCRIM_COLOR = 0x96000000;
 
+    /** Speed of a settle which doesn't start with a fling (dp/ms) */
+    private static final float DEFAULT_SETTLE_VELOCITY = 3f;
+    /** Gesture started away from any drawer, handle or edge */
+    private static final int GESTURE_NONE = 0;
+    /** Gesture started on the scrim of an open drawer */
+    private static final int GESTURE_SCRIM = 1;
+    /** Gesture started in the edge zone of an edge draggable drawer */
+    private static final int GESTURE_EDGE = 2;
+    /** Gesture started on a drawer or its handle, or while a drawer was moving */
+    private static final int GESTURE_DRAWER = 3;
+
+    /** Pending drawer commands, see {@link #postOpenDrawer(DraggedDrawer)} */
+    private static final int COMMAND_NONE = 0;
+    private static final int COMMAND_OPEN = 1;
+    private static final int COMMAND_CLOSE = 2;
+
+    /** Number of drawer events kept for diagnostics */
+    private static final int DEFAULT_FLIGHT_RECORDER_CAPACITY = 128;
+    /** Shortest settle (ms) */
+    private static final int MIN_SETTLE_DURATION = 80;
+    /** Longest settle (ms) */
+    private static final int MAX_SETTLE_DURATION = 400;
+
     /** Current state of drawers */
     private int mDrawerState;
 
     private int mScrimColor;
     private float mScrimOpacity;
+    /** Background color last applied for the scrim */
+    private int mAppliedScrimColor;
+    private boolean mScrimApplied;
+    /** Listeners for events of any drawer */
+    private final ListenerRegistry<DrawerListener> mListeners = new ListenerRegistry<DrawerListener>();
+    /** Listener set with {@link #setDrawerListener(DrawerListener)} */
     private DrawerListener mListener;
+    /** Delivers events to {@link DraggedDrawer#LISTEN_BACKGROUND} listeners */
+    private final BackgroundDispatcher mBackground = new BackgroundDispatcher(mListeners);
     private boolean mInLayout=false;
     private boolean mFirstLayout=true;
     private float mInitialMotionX;
@@ -109,8 +169,128 @@ public class DragLayout extends RelativeLayout {
 
     private ViewDragHelper mEdgeDragHelper;
 
+    /** Settle motion for drawers without their own {@link SettleModel} */
+    private SettleModel mSettleModel;
+    /** Drawers with a running settle, advanced once per frame */
+    private final ArrayList<DrawerHolder> mSettling = new ArrayList<DrawerHolder>();
+    private boolean mFrameScheduled;
+    /** Time and frames for settling drawers */
+    private FrameSource mFrameSource;
+    /** Each pointer may drag its own drawer */
+    private boolean mMultiPointer;
+    /** Which drawers close when another one opens, i.e. {@link #EXCLUSIVE_ALL} */
+    private int mExclusivity = EXCLUSIVE_ALL;
+    /** Skip the drag helpers for gestures which can't involve a drawer */
+    private boolean mFastReject=true;
+    /** Classification of the current gesture, made when its pointers go down */
+    private int mGestureClass = GESTURE_NONE;
+    private static final String TRACE_MEASURE = "DragLayout#onMeasure";
+    private static final String TRACE_LAYOUT = "DragLayout#onLayout";
+    private static final String TRACE_INTERCEPT = "DragLayout#onInterceptTouchEvent";
+    private static final String TRACE_TOUCH = "DragLayout#onTouchEvent";
+    private static final String TRACE_SETTLE = "DragLayout#settle";
+    private static final String TRACE_LISTENERS = "DragLayout#listeners";
+
+    private final FrameSource.Callback mFrameCallback = new FrameSource.Callback() {
+        @Override
+        public void doFrame(long frameTime) {
+            mFrameScheduled=false;
+            if(mCommandsScheduled.get())
+                drainCommands();
+            DrawerTrace.beginSection(TRACE_SETTLE);
+            try {
+                stepSettlers(frameTime);
+            } finally {
+                DrawerTrace.endSection();
+            }
+        }
+    };
+
+    /** Scratch rect used to clip drawers while drawing */
+    private final Rect mClipRect = new Rect();
+
+    /** Skip drawing children hidden behind fully open opaque drawers */
+    private boolean mOcclusionCulling=true;
+    /** Content bounds of the fully open opaque drawers for the current draw pass */
+    private Rect[] mOccluders = new Rect[0];
+    /** Child index of each occluder */
+    private int[] mOccluderIndices = new int[0];
+    private int mOccluderCount;
+
+    /** Velocity of the dragging pointer, estimated from batched samples */
+    private final TouchPredictor mTouchPredictor = new TouchPredictor();
+    /** How far ahead (ms) to draw a dragged drawer.  0 disables prediction */
+    private int mPredictionLead;
+    /** Drawer currently drawn ahead of the pointer */
+    private DraggedDrawer mPredictedDrawer;
+
+    /** Receives every touch event, when recording gestures */
+    private GestureRecorder mGestureRecorder;
+    /** Recent drawer events for diagnostics, may be <code>null</code> */
+    private FlightRecorder mFlightRecorder = new FlightRecorder(DEFAULT_FLIGHT_RECORDER_CAPACITY);
+    /** Persists drawer state across process death, may be <code>null</code> */
+    private DrawerStateStore mStateStore;
+    /** The {@link #mStateStore} finished loading and its state was applied */
+    private boolean mStoredStateApplied;
+
+    /** Counters updated in place on the hot paths */
+    private final DrawerMetrics mMetrics = new DrawerMetrics();
+    /** Snapshot handed to {@link #mMetricsSink} */
+    private final DrawerMetrics mSinkMetrics = new DrawerMetrics();
+    private MetricsSink mMetricsSink;
+    private long mMetricsInterval;
+    private final Runnable mMetricsReport = new Runnable() {
+        @Override
+        public void run() {
+            if(mMetricsSink==null)
+                return;
+            mSinkMetrics.set(mMetrics);
+            mMetricsSink.onMetrics(mSinkMetrics);
+            postDelayed(this, mMetricsInterval);
+        }
+    };
+
+    /** Evict the content of drawers closed at least this long (ms).  0 disables timed eviction */
+    private long mEvictAfter;
+    /** Evict the content of all closed drawers on memory trims of at least this level.  0 disables it */
+    private int mEvictTrimLevel;
+    private final Runnable mEvictionCheck = new Runnable() {
+        @Override
+        public void run() {
+            evictClosedContent(mEvictAfter);
+        }
+    };
+    private final ComponentCallbacks2 mTrimCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            trimMemory(level);
+        }
+
+        @Override
+        public void onLowMemory() {
+            trimMemory(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
+
+    /** A drain of the drawer commands is scheduled */
+    private final AtomicBoolean mCommandsScheduled = new AtomicBoolean();
+    /** Posts from other threads, which View.post() drops while detached on older platforms */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mScheduleCommands = new Runnable() {
+        @Override
+        public void run() {
+            scheduleFrame();
+        }
+    };
+
     /** Each drawer has its own ViewDragHelper and DragCallback */
     private Map<DraggedDrawer, DrawerHolder> mDrawers = new HashMap<DraggedDrawer, DrawerHolder>();
+    /** Same holders as {@link #mDrawers}, indexed so hot paths can iterate without an Iterator */
+    private final ArrayList<DrawerHolder> mHolders = new ArrayList<DrawerHolder>();
 
     public DragLayout(Context context) {
         this(context, null);
@@ -136,19 +316,501 @@ public class DragLayout extends RelativeLayout {
         mEdgeDragHelper.setMinVelocity(minFlingVelocity);
         mEdgeDragHelper.setEdgeTrackingEnabled(ViewDragHelper.EDGE_ALL);
 
+        mFrameSource = new ChoreographerFrameSource();
+        mSettleModel = new SettleModel.Decelerate(DEFAULT_SETTLE_VELOCITY*getResources().getDisplayMetrics().density,
+                MIN_SETTLE_DURATION, MAX_SETTLE_DURATION);
+
         // So that we can catch the back button
         setFocusableInTouchMode(true);
         ViewGroupCompat.setMotionEventSplittingEnabled(this, false);
     }
 
     /**
-     * Set a listener to be notified of drawer events.
+     * Set a listener to be notified of drawer events, replacing the listener previously set
+     * with this method.  Listeners added with {@link #addDrawerListener(DrawerListener, int)} are kept.
      *
-     * @param listener Listener to notify when drawer events occur
+     * @param listener Listener to notify when drawer events occur, <code>null</code> to remove it
      * @see DrawerListener
      */
     public void setDrawerListener(DrawerListener listener) {
+        if(mListener!=null)
+            mListeners.remove(mListener);
         mListener = listener;
+        if(listener!=null)
+            mListeners.add(listener, LISTEN_ALL);
+    }
+
+    /**
+     * Subscribe to all events of any drawer
+     * @param listener  the listener
+     */
+    public void addDrawerListener(DrawerListener listener) {
+        mListeners.add(listener, LISTEN_ALL);
+    }
+
+    /**
+     * Subscribe to some events of any drawer.  Listeners are not called for the other events,
+     * so i.e. a listener for {@link DraggedDrawer#LISTEN_OPENED} costs nothing while drawers slide.
+     * Adding a listener again changes its events.
+     * @param listener  the listener
+     * @param events    <code>LISTEN_*</code> flags from {@link DraggedDrawer}
+     */
+    public void addDrawerListener(DrawerListener listener, int events) {
+        mListeners.add(listener, events);
+    }
+
+    /**
+     * @param listener  a listener added with {@link #addDrawerListener(DrawerListener, int)} or
+     *                  {@link #setDrawerListener(DrawerListener)}
+     */
+    public void removeDrawerListener(DrawerListener listener) {
+        if(listener==mListener)
+            mListener = null;
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Replace the executor delivering events to {@link DraggedDrawer#LISTEN_BACKGROUND} listeners
+     * of this layout and its drawers.  Events are drained by one task at a time, so a pool does
+     * not reorder them.  Defaults to a single background thread with a bounded queue, shared by
+     * all layouts.
+     * @param executor  the executor, <code>null</code> for the default
+     */
+    public void setBackgroundExecutor(Executor executor) {
+        mBackground.setExecutor(executor);
+    }
+
+    public Executor getBackgroundExecutor() {
+        return mBackground.getExecutor();
+    }
+
+    /**
+     * @return <code>true</code> if a background listener of the layout or drawer subscribed to the event
+     */
+    private boolean hasBackgroundListener(DraggedDrawer drawerView, int event) {
+        return mListeners.hasBackground(event) || drawerView.mListeners.hasBackground(event);
+    }
+
+    /**
+     * Set the motion used to settle drawers which don't have their own
+     * {@link DraggedDrawer#setSettleModel(SettleModel) settle model}.
+     * Defaults to a {@link SettleModel.Decelerate} whose duration follows the fling velocity.
+     * @param model the settle model
+     */
+    public void setSettleModel(SettleModel model) {
+        if(model==null)
+            throw new IllegalArgumentException("Settle model cannot be null");
+        mSettleModel = model;
+    }
+
+    public SettleModel getSettleModel() {
+        return mSettleModel;
+    }
+
+    /**
+     * Replace the source of time and frames used to settle drawers.  Installing a
+     * {@link ManualFrameSource} makes drawer animations deterministic for tests.
+     * @param frameSource   the frame source
+     */
+    public void setFrameSource(FrameSource frameSource) {
+        if(frameSource==null)
+            throw new IllegalArgumentException("Frame source cannot be null");
+        if(mFrameScheduled) {
+            mFrameSource.removeFrameCallback(mFrameCallback);
+            frameSource.postFrameCallback(mFrameCallback);
+        }
+        mFrameSource = frameSource;
+    }
+
+    public FrameSource getFrameSource() {
+        return mFrameSource;
+    }
+
+    /**
+     * Let each pointer capture and drag its own drawer, i.e. a left and a bottom drawer dragged
+     * with two fingers at once.  Every drawer keeps its own velocity tracking and settles
+     * independently on release.  Drawers which conflict according to
+     * {@link #setDrawerExclusivity(int)} still can't be dragged at the same time.
+     * Enables motion event splitting so pointers landing on other children reach them separately.
+     * @param enabled   whether to allow concurrent drags.  Disabled by default.
+     */
+    public void setMultiPointerEnabled(boolean enabled) {
+        mMultiPointer = enabled;
+        ViewGroupCompat.setMotionEventSplittingEnabled(this, enabled);
+    }
+
+    public boolean isMultiPointerEnabled() {
+        return mMultiPointer;
+    }
+
+    /**
+     * Classify each gesture when it goes down and, for gestures starting away from any drawer,
+     * handle or edge while no drawer is open or moving, pass the rest of the gesture straight to
+     * the children without consulting the drag helpers.
+     * @param enabled   whether to fast-reject gestures.  Enabled by default.
+     */
+    public void setFastRejectEnabled(boolean enabled) {
+        mFastReject = enabled;
+    }
+
+    public boolean isFastRejectEnabled() {
+        return mFastReject;
+    }
+
+    /**
+     * Decide what a pointer going down may lead to
+     * @param x     pointer x, in layout coordinates
+     * @param y     pointer y, in layout coordinates
+     * @return one of the <code>GESTURE_*</code> classes
+     */
+    private int classifyGesture(float x, float y) {
+        if(mDrawerState!=STATE_IDLE || mEdgeDragHelper.findTopChildUnder((int) x, (int) y) instanceof DraggedDrawer)
+            return GESTURE_DRAWER;
+        //mirror ViewDragHelper's edge detection
+        final int edgeSize = mEdgeDragHelper.getEdgeSize();
+        for(int i=0; i<mHolders.size(); i++) {
+            final DraggedDrawer drawer = mHolders.get(i).drawer;
+            if(drawer.isEdgeDraggable()
+                    && drawer.mPolicy.isInEdgeZone(x, y, edgeSize, getLeft(), getTop(), getRight(), getBottom()))
+                return GESTURE_EDGE;
+        }
+        return mScrimOpacity>0 ? GESTURE_SCRIM : GESTURE_NONE;
+    }
+
+    /**
+     * Choose which drawers are closed when a drawer is opened or captured for dragging.
+     * With multi-pointer dragging, conflicting drawers also can't be dragged concurrently.
+     * @param exclusivity   {@link #EXCLUSIVE_ALL} (default), {@link #EXCLUSIVE_AXIS} or {@link #EXCLUSIVE_NONE}
+     */
+    public void setDrawerExclusivity(int exclusivity) {
+        if(exclusivity<EXCLUSIVE_ALL || exclusivity>EXCLUSIVE_NONE)
+            throw new IllegalArgumentException("Unknown exclusivity: " + exclusivity);
+        mExclusivity = exclusivity;
+    }
+
+    public int getDrawerExclusivity() {
+        return mExclusivity;
+    }
+
+    /**
+     * Free the content of drawers which stay closed, keeping only its view state.  Content is
+     * recreated on the UI thread when the drawer is next captured or opened, so the user never
+     * drags an empty drawer.  Only content which can be recreated is evicted, i.e.
+     * {@link DraggedDrawer#setContentAdapter(DrawerContentAdapter) adapter pages} and
+     * {@link DraggedDrawer#setAsyncContentLayout(int) async layouts}; an async layout is then
+     * inflated synchronously, unlike its first inflation.
+     * @param closedMillis  evict drawers closed at least this long, 0 to disable.  Disabled by default.
+     * @param trimLevel     evict all closed drawers when the application is asked to trim memory to
+     *                      at least this {@link ComponentCallbacks2} level, 0 to disable.  Disabled by default.
+     */
+    public void setContentEviction(long closedMillis, int trimLevel) {
+        mEvictAfter = closedMillis;
+        if(mEvictTrimLevel!=trimLevel && getWindowToken()!=null) {
+            if(mEvictTrimLevel>0)
+                getContext().getApplicationContext().unregisterComponentCallbacks(mTrimCallbacks);
+            if(trimLevel>0)
+                getContext().getApplicationContext().registerComponentCallbacks(mTrimCallbacks);
+        }
+        mEvictTrimLevel = trimLevel;
+        removeCallbacks(mEvictionCheck);
+        if(mEvictAfter>0)
+            evictClosedContent(mEvictAfter);
+    }
+
+    /**
+     * Evict the content of closed drawers, and drop the views the drawers' content adapters keep
+     * for reuse, if the trim level reaches the one set with {@link #setContentEviction(long, int)}.
+     * Called automatically while attached.
+     * @param level a {@link ComponentCallbacks2} trim level
+     */
+    public void trimMemory(int level) {
+        if(mEvictTrimLevel<=0 || level<mEvictTrimLevel)
+            return;
+        evictClosedContent(0);
+        for(int i=0; i<mHolders.size(); i++) {
+            final DrawerContentAdapter adapter = mHolders.get(i).drawer.getContentAdapter();
+            if(adapter!=null)
+                adapter.clearRecycledViews();
+        }
+    }
+
+    /**
+     * Evict the content of drawers closed at least <code>minClosed</code> ms and, with timed
+     * eviction, check again when the next closed drawer is due
+     */
+    private void evictClosedContent(long minClosed) {
+        final long now = SystemClock.uptimeMillis();
+        long nextDue = Long.MAX_VALUE;
+        for(int i=0; i<mHolders.size(); i++) {
+            final DrawerHolder holder = mHolders.get(i);
+            if(holder.closedAt==0 || holder.drawer.isContentEvicted())
+                continue;
+            final long due = holder.closedAt + minClosed;
+            if(due<=now) {
+                if(holder.drawer.evictContent() && Log.isLoggable(TAG, Log.VERBOSE))
+                    Log.v(TAG, "Evicted content of drawer " + holder.drawer);
+            } else if(due<nextDue) {
+                nextDue = due;
+            }
+        }
+        if(mEvictAfter>0 && nextDue!=Long.MAX_VALUE) {
+            removeCallbacks(mEvictionCheck);
+            postDelayed(mEvictionCheck, nextDue-now);
+        }
+    }
+
+    /**
+     * Start counting how long a drawer stays closed
+     */
+    private void markClosed(DrawerHolder holder) {
+        holder.closedAt = SystemClock.uptimeMillis();
+        if(mEvictAfter>0) {
+            removeCallbacks(mEvictionCheck);
+            postDelayed(mEvictionCheck, mEvictAfter);
+        }
+    }
+
+    /**
+     * Whether two drawers may not be open at the same time
+     */
+    private boolean isExclusive(DraggedDrawer a, DraggedDrawer b) {
+        if(a==b)
+            return false;
+        switch(mExclusivity) {
+            case EXCLUSIVE_NONE:
+                return false;
+            case EXCLUSIVE_AXIS:
+                return a.mPolicy.isHorizontal()==b.mPolicy.isHorizontal();
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Whether a drawer may be captured given the drags already in progress.  Only one drawer
+     * moves at a time unless multi-pointer dragging is enabled.
+     */
+    private boolean canCapture(DraggedDrawer drawer) {
+        for(int i=0; i<mHolders.size(); i++) {
+            final DrawerHolder holder = mHolders.get(i);
+            if(holder.drawer!=drawer && holder.helper.getViewDragState()==STATE_DRAGGING
+                    && (!mMultiPointer || isExclusive(drawer, holder.drawer)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Enable or disable occlusion culling.  When enabled, children which are completely
+     * covered by the content of a fully open drawer are not drawn, and partially covered
+     * children are clipped.  Only drawers whose content is {@link DraggedDrawer#isOpaqueContent() opaque}
+     * occlude; declare it with {@link DraggedDrawer#setOpaqueContent(boolean)} where the content
+     * background tells the wrong story, instead of disabling culling for the whole layout.
+     * @param enabled   whether to cull occluded children.  Enabled by default.
+     */
+    public void setOcclusionCullingEnabled(boolean enabled) {
+        mOcclusionCulling = enabled;
+        invalidate();
+    }
+
+    public boolean isOcclusionCullingEnabled() {
+        return mOcclusionCulling;
+    }
+
+    /**
+     * Draw a dragged drawer where the finger is expected to be a short time from now, to hide
+     * input latency.  The velocity is estimated from all samples batched into each touch event.
+     * The prediction only affects drawing; the drawer's real position always follows the finger.
+     * @param lead  time to predict ahead in ms, typically one or two frames.  0 disables prediction.
+     */
+    public void setTouchPrediction(int lead) {
+        mPredictionLead = Math.max(0, lead);
+        if(mPredictionLead==0)
+            clearTouchPrediction();
+    }
+
+    public int getTouchPrediction() {
+        return mPredictionLead;
+    }
+
+    /**
+     * Record the touch events this layout receives, i.e. to replay gestures captured on a device
+     * in the library tests.
+     * @param recorder  the recorder, or <code>null</code> to stop recording
+     */
+    public void setGestureRecorder(GestureRecorder recorder) {
+        mGestureRecorder = recorder;
+    }
+
+    /**
+     * Keep recent drawer events (state changes, captures, releases, open/close requests and
+     * intercept decisions) for diagnostics.  A recorder with 128 events is installed by default.
+     * @param recorder  the recorder, or <code>null</code> to stop recording
+     */
+    public void setFlightRecorder(FlightRecorder recorder) {
+        mFlightRecorder = recorder;
+    }
+
+    /**
+     * @return the recorder of recent drawer events, i.e. to dump into a bug report. May be <code>null</code>
+     */
+    public FlightRecorder getFlightRecorder() {
+        return mFlightRecorder;
+    }
+
+    /**
+     * Persist the drawers' offsets, and a snapshot of the open drawer's content, whenever the
+     * layout saves its instance state.  When set before the first layout pass, the persisted
+     * state is read back in the background and drawers move to their persisted position without
+     * animating, unless the user or the app moved them first.  An open drawer whose content is
+     * still {@link DraggedDrawer#setAsyncContentLayout(int) inflating} shows the snapshot until
+     * the content is attached.
+     * @param store the store, <code>null</code> to stop persisting
+     */
+    public void setStateStore(final DrawerStateStore store) {
+        mStateStore = store;
+        mStoredStateApplied = false;
+        if(store==null || !mFirstLayout)
+            return;
+        DraggedDrawer.getBackgroundHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                if(!store.load())
+                    return;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(mStateStore!=store)
+                            return;
+                        mStoredStateApplied = true;
+                        for(int i=0; i<mHolders.size(); i++)
+                            applyStoredState(mHolders.get(i).drawer);
+                        //shown only in place of content which isn't ready yet
+                        store.dropSnapshot();
+                    }
+                });
+            }
+        });
+    }
+
+    public DrawerStateStore getStateStore() {
+        return mStateStore;
+    }
+
+    /**
+     * Place a drawer where the {@link #mStateStore} says it was.  After the first layout pass
+     * only drawers still closed and at rest are moved.
+     */
+    private void applyStoredState(final DraggedDrawer drawerView) {
+        final int index = drawerView.getId()!=NO_ID ? mStateStore.indexOf(drawerView.getId()) : -1;
+        if(index==-1)
+            return;
+        final LayoutParams lp = getDragLayoutParams(drawerView);
+        if(!mFirstLayout && (lp.onScreen!=0f || drawerView.mState!=STATE_IDLE))
+            return;
+        float offset = mStateStore.getOffset(index);
+        //a drawer caught moving comes back at rest
+        if(mStateStore.getState(index)!=STATE_IDLE)
+            offset = offset>=0.5f ? 1f : 0f;
+        if(offset==0f)
+            return;
+        lp.onScreen = offset;
+        lp.knownOpen = offset==1f;
+        mDrawers.get(drawerView).closeReported = false;
+        if(!mFirstLayout)
+            drawerView.setContentVisibility(VISIBLE);
+        drawerView.setLayoutParams(lp);
+        if(drawerView.isContentReady())
+            return;
+        final byte[] data = mStateStore.takeSnapshot(drawerView.getId());
+        if(data==null)
+            return;
+        DraggedDrawer.getBackgroundHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap snapshot = BitmapFactory.decodeByteArray(data, 0, data.length);
+                if(snapshot==null)
+                    return;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(drawerView.isContentReady())
+                            snapshot.recycle();
+                        else
+                            drawerView.showSnapshot(snapshot);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Write the drawers' state to the {@link #setStateStore(DrawerStateStore) state store}.
+     * Called automatically when the layout saves its instance state.
+     */
+    public void persistDrawerState() {
+        if(mStateStore==null)
+            return;
+        final int count = mHolders.size();
+        final int[] ids = new int[count];
+        final float[] offsets = new float[count];
+        final int[] states = new int[count];
+        DraggedDrawer snapshotDrawer = null;
+        Bitmap snapshot = null;
+        final float scale = mStateStore.getSnapshotScale();
+        for(int i=0; i<count; i++) {
+            final DraggedDrawer drawer = mHolders.get(i).drawer;
+            final LayoutParams lp = getDragLayoutParams(drawer);
+            ids[i] = drawer.getId();
+            offsets[i] = lp.onScreen;
+            states[i] = drawer.mState;
+            if(snapshot==null && lp.knownOpen && scale>0 && drawer.getId()!=NO_ID) {
+                snapshot = drawer.captureSnapshot(scale);
+                if(snapshot!=null)
+                    snapshotDrawer = drawer;
+            }
+        }
+        mStateStore.save(ids, offsets, states, snapshotDrawer, snapshot);
+    }
+
+    /**
+     * Snapshot of the work done by this layout since creation or the last {@link #resetMetrics()}
+     * @return a copy of the counters
+     */
+    public DrawerMetrics getMetrics() {
+        return new DrawerMetrics(mMetrics);
+    }
+
+    /**
+     * Copy the counters without allocating
+     * @param out   receives the counters
+     * @return <code>out</code>
+     */
+    public DrawerMetrics getMetrics(DrawerMetrics out) {
+        out.set(mMetrics);
+        return out;
+    }
+
+    /**
+     * Zero all counters
+     */
+    public void resetMetrics() {
+        mMetrics.reset();
+    }
+
+    /**
+     * Report metrics periodically while the layout is attached to a window
+     * @param sink      receives the metrics, or <code>null</code> to stop reporting
+     * @param interval  time between reports, in ms.  Must be positive when a sink is set.
+     */
+    public void setMetricsSink(MetricsSink sink, long interval) {
+        if(sink!=null && interval<=0)
+            throw new IllegalArgumentException("Metrics interval must be positive: " + interval);
+        removeCallbacks(mMetricsReport);
+        mMetricsSink = sink;
+        mMetricsInterval = interval;
+        if(sink!=null)
+            postDelayed(mMetricsReport, interval);
     }
 
     /**
@@ -173,9 +835,21 @@ public class DragLayout extends RelativeLayout {
      * @param drawerView the drawer to open
      */
     public void openDrawer(DraggedDrawer drawerView) {
+        if(mFlightRecorder!=null)
+            mFlightRecorder.record(FlightRecorder.EVENT_OPEN, drawerView.getId(), 0, getDrawerViewOffset(drawerView), 0);
+        //opens once the content inflated in the background is attached
+        mDrawers.get(drawerView).closedAt = 0;
+        drawerView.restoreContent();
+        if(drawerView.queueOpenUntilContentReady())
+            return;
+        final OrientationPolicy policy = drawerView.mPolicy;
+        final int target = policy.getOpenPosition(policy.getSize(drawerView), policy.getParentSize(getWidth(), getHeight()));
+        //already opening
+        if(!mFirstLayout && isSettlingTo(drawerView, target))
+            return;
         dispatchOnDrawerOpening(drawerView);
 
-        closeAllDrawers(drawerView);
+        closeExclusiveDrawers(drawerView);
 
         if(mFirstLayout) {
             final LayoutParams lp = getDragLayoutParams(drawerView);
@@ -183,23 +857,53 @@ public class DragLayout extends RelativeLayout {
             lp.knownOpen=true;
             drawerView.setLayoutParams(lp);
         } else {
-            final ViewDragHelper mDragHelper = mDrawers.get(drawerView).helper;
-            switch(drawerView.getDrawerType()) {
-                case DRAWER_LEFT:
-                    mDragHelper.smoothSlideViewTo(drawerView, 0, drawerView.getTop());
-                    break;
-                case DRAWER_RIGHT:
-                    mDragHelper.smoothSlideViewTo(drawerView, getWidth() - drawerView.getWidth(), drawerView.getTop());
-                    break;
-                case DRAWER_TOP:
-                    mDragHelper.smoothSlideViewTo(drawerView, drawerView.getLeft(), 0);
+            animateDrawer(drawerView, target);
+        }
+        invalidate();
+    }
+
+    /**
+     * Open a drawer from any thread.  The command is applied on the UI thread at the next frame;
+     * only the latest command posted for a drawer before then takes effect, so bursts of
+     * commands cost a single open or close.
+     * @param drawerView the drawer to open
+     */
+    public void postOpenDrawer(DraggedDrawer drawerView) {
+        postCommand(drawerView, COMMAND_OPEN);
+    }
+
+    /**
+     * Close a drawer from any thread.  The command is applied on the UI thread at the next frame;
+     * only the latest command posted for a drawer before then takes effect.
+     * @param drawerView the drawer to close
+     */
+    public void postCloseDrawer(DraggedDrawer drawerView) {
+        postCommand(drawerView, COMMAND_CLOSE);
+    }
+
+    private void postCommand(DraggedDrawer drawerView, int command) {
+        drawerView.mPendingCommand.set(command);
+        if(mCommandsScheduled.compareAndSet(false, true))
+            mMainHandler.post(mScheduleCommands);
+    }
+
+    /**
+     * Apply the latest command posted for each drawer
+     */
+    private void drainCommands() {
+        //commands arriving from here on schedule another drain
+        mCommandsScheduled.set(false);
+        for(int i=0; i<mHolders.size(); i++) {
+            final DraggedDrawer drawer = mHolders.get(i).drawer;
+            switch(drawer.mPendingCommand.getAndSet(COMMAND_NONE)) {
+                case COMMAND_OPEN:
+                    openDrawer(drawer);
                     break;
-                case DRAWER_BOTTOM:
-                    mDragHelper.smoothSlideViewTo(drawerView, drawerView.getLeft(), getHeight() - drawerView.getHeight());
+                case COMMAND_CLOSE:
+                    closeDrawer(drawer);
                     break;
             }
         }
-        invalidate();
     }
 
     /**
@@ -207,42 +911,118 @@ public class DragLayout extends RelativeLayout {
      * @param drawerView the drawer to close
      */
     public void closeDrawer(DraggedDrawer drawerView) {
+        if(mFlightRecorder!=null)
+            mFlightRecorder.record(FlightRecorder.EVENT_CLOSE, drawerView.getId(), 0, getDrawerViewOffset(drawerView), 0);
+        drawerView.cancelQueuedOpen();
         if(mFirstLayout) {
             final LayoutParams lp = getDragLayoutParams(drawerView);
             lp.onScreen=0f;
             lp.knownOpen=false;
             drawerView.setLayoutParams(lp);
         } else {
-            final ViewDragHelper mDragHelper = mDrawers.get(drawerView).helper;
-            switch(drawerView.getDrawerType()) {
-                case DRAWER_LEFT:
-                    mDragHelper.smoothSlideViewTo(drawerView, drawerView.getHandleSize()-drawerView.getWidth(), drawerView.getTop());
-                    break;
-                case DRAWER_RIGHT:
-                    mDragHelper.smoothSlideViewTo(drawerView, getWidth()-drawerView.getHandleSize(), drawerView.getTop());
-                    break;
-                case DRAWER_TOP:
-                    mDragHelper.smoothSlideViewTo(drawerView, drawerView.getLeft(), drawerView.getHandleSize()-drawerView.getHeight());
-                    break;
-                case DRAWER_BOTTOM:
-                    mDragHelper.smoothSlideViewTo(drawerView, drawerView.getLeft(), getHeight() - drawerView.getHandleSize());
-                    break;
-            }
+            final OrientationPolicy policy = drawerView.mPolicy;
+            final int target = policy.getClosedPosition(policy.getSize(drawerView), drawerView.getHandleSize(),
+                    policy.getParentSize(getWidth(), getHeight()));
+            //already closing
+            if(isSettlingTo(drawerView, target))
+                return;
+            animateDrawer(drawerView, target);
         }
         invalidate();
     }
 
+    /**
+     * Animate a drawer to a position along its drag axis
+     * @param drawerView    the drawer
+     * @param target        target left for horizontal drawers, top for vertical drawers
+     * @param velocity      current velocity along the drag axis, in pixels/ms
+     */
+    private void settleDrawer(DraggedDrawer drawerView, int target, float velocity) {
+        final SettleModel model = drawerView.getSettleModel()!=null ? drawerView.getSettleModel() : mSettleModel;
+        final DrawerHolder holder = mDrawers.get(drawerView);
+        final boolean wasRunning = holder.settler.isRunning();
+        if(wasRunning)
+            mMetrics.settlesInterrupted++;
+        if(holder.settler.start(model, target, velocity, mFrameSource.now())) {
+            mMetrics.settlesStarted++;
+            if(!mSettling.contains(holder))
+                mSettling.add(holder);
+            scheduleFrame();
+            updateDrawerState(STATE_SETTLING, drawerView);
+        } else if(wasRunning) {
+            //interrupted right at the new target
+            mSettling.remove(holder);
+            updateDrawerState(STATE_IDLE, drawerView);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the drawer is already settling at the target
+     */
+    private boolean isSettlingTo(DraggedDrawer drawerView, int target) {
+        final DrawerSettler settler = mDrawers.get(drawerView).settler;
+        return settler.isRunning() && settler.getTarget()==target;
+    }
+
+    /**
+     * Programmatic open/close of a drawer.  A settle already in progress is retargeted from its
+     * current position and velocity instead of restarting from rest.
+     * @param drawerView    the drawer
+     * @param target        target left for horizontal drawers, top for vertical drawers
+     */
+    private void animateDrawer(DraggedDrawer drawerView, int target) {
+        final DrawerSettler settler = mDrawers.get(drawerView).settler;
+        //retarget a settle in progress from where it is, keeping its momentum
+        settleDrawer(drawerView, target, settler.isRunning() ? settler.getVelocity(mFrameSource.now()) : 0);
+    }
+
+    private void scheduleFrame() {
+        if(!mFrameScheduled) {
+            mFrameScheduled=true;
+            mFrameSource.postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /**
+     * Advance the drawers which are settling to their position at the frame time
+     * @param frameTime frame time in ms
+     */
+    private void stepSettlers(long frameTime) {
+        for(int i=mSettling.size()-1; i>=0; i--) {
+            final DrawerHolder holder = mSettling.get(i);
+            if(!holder.settler.isRunning()) {
+                mSettling.remove(i);
+            } else if(!holder.settler.step(frameTime)) {
+                mSettling.remove(i);
+                updateDrawerState(STATE_IDLE, holder.settler.getDrawer());
+            }
+        }
+        if(!mSettling.isEmpty())
+            scheduleFrame();
+    }
+
     /**
      * Close all the drawers
      */
     public void closeAllDrawers() {
-        closeAllDrawers(null);
+        for(int i=0; i<mHolders.size(); i++) {
+            final DraggedDrawer drawer = mHolders.get(i).drawer;
+            if(isDrawerVisible(drawer))
+                closeDrawer(drawer);
+        }
     }
 
-    private void closeAllDrawers(DraggedDrawer except) {
-        for(DraggedDrawer drawer : mDrawers.keySet()) {
-            if(isDrawerVisible(drawer) && (except==null || except!=drawer))
-                closeDrawer(drawer);
+    /**
+     * Close the visible drawers which may not be open together with a drawer, leaving the
+     * ones being dragged alone
+     * @param drawer    the drawer being opened
+     */
+    private void closeExclusiveDrawers(DraggedDrawer drawer) {
+        for(int i=0; i<mHolders.size(); i++) {
+            final DrawerHolder holder = mHolders.get(i);
+            if(isDrawerVisible(holder.drawer) && isExclusive(drawer, holder.drawer)
+                    && holder.helper.getViewDragState()!=STATE_DRAGGING)
+                closeDrawer(holder.drawer);
         }
     }
 
@@ -250,12 +1030,31 @@ public class DragLayout extends RelativeLayout {
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
         mFirstLayout=true;
+        //the frame draining commands may have been dropped on detach
+        if(!mSettling.isEmpty() || mCommandsScheduled.get())
+            scheduleFrame();
+        if(mMetricsSink!=null) {
+            removeCallbacks(mMetricsReport);
+            postDelayed(mMetricsReport, mMetricsInterval);
+        }
+        if(mEvictTrimLevel>0)
+            getContext().getApplicationContext().registerComponentCallbacks(mTrimCallbacks);
+        if(mEvictAfter>0)
+            evictClosedContent(mEvictAfter);
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
         mFirstLayout=true;
+        if(mFrameScheduled) {
+            mFrameSource.removeFrameCallback(mFrameCallback);
+            mFrameScheduled=false;
+        }
+        removeCallbacks(mMetricsReport);
+        removeCallbacks(mEvictionCheck);
+        if(mEvictTrimLevel>0)
+            getContext().getApplicationContext().unregisterComponentCallbacks(mTrimCallbacks);
     }
 
     @Override
@@ -282,36 +1081,75 @@ public class DragLayout extends RelativeLayout {
                 : new LayoutParams(p);
     }
 
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        mMetrics.measurePasses++;
+        DrawerTrace.beginSection(TRACE_MEASURE);
+        try {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        } finally {
+            DrawerTrace.endSection();
+        }
+    }
+
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        mMetrics.layoutPasses++;
+        DrawerTrace.beginSection(TRACE_LAYOUT);
         mInLayout=true;
-        super.onLayout(changed, l, t, r, b);
-        for(DraggedDrawer drawerView : mDrawers.keySet()) {
-            LayoutParams lp = (LayoutParams)drawerView.getLayoutParams();
-            if(lp.onScreen==0f && !isInEditMode()) {
-                drawerView.setContentVisibility(INVISIBLE);
-                switch(drawerView.getDrawerType()) {
-                    case DRAWER_LEFT:
-                        drawerView.offsetLeftAndRight(drawerView.getHandleSize() - drawerView.getWidth());
-                        break;
-                    case DRAWER_RIGHT:
-                        drawerView.offsetLeftAndRight(drawerView.getWidth()-drawerView.getHandleSize());
-                        break;
-                    case DRAWER_TOP:
-                        drawerView.offsetTopAndBottom(drawerView.getHandleSize()-drawerView.getHeight());
-                        break;
-                    case DRAWER_BOTTOM:
-                        drawerView.offsetTopAndBottom(drawerView.getHeight() - drawerView.getHandleSize());
-                        break;
+        try {
+            super.onLayout(changed, l, t, r, b);
+            for(int i=0; i<mHolders.size(); i++) {
+                final DrawerHolder holder = mHolders.get(i);
+                final DraggedDrawer drawerView = holder.drawer;
+                final LayoutParams lp = (LayoutParams)drawerView.getLayoutParams();
+                if(isInEditMode())
+                    continue;
+                final OrientationPolicy policy = drawerView.mPolicy;
+                holder.callback.updateBounds();
+                //the pass left the drawer where the previous one put it
+                if(!changed && lp.onScreen==holder.laidOutOffset && policy.getSize(drawerView)==holder.laidOutSize
+                        && policy.getPosition(drawerView)==holder.laidOutPosition)
+                    continue;
+                positionDrawer(drawerView, lp.onScreen);
+                //only react to the drawer becoming closed, not to every layout pass while it is closed
+                if(lp.onScreen==0f && holder.laidOutOffset!=0f) {
+                    drawerView.setContentVisibility(INVISIBLE);
+                    if(!holder.closeReported) {
+                        holder.closeReported = true;
+                        drawerView.dispatchDrawerClosed();
+                        if(drawerView.mListeners.hasBackground(LISTEN_CLOSED))
+                            mBackground.postDrawerClosed(drawerView);
+                    }
+                    markClosed(holder);
                 }
-                if(drawerView.mListener!=null)
-                    drawerView.mListener.onDrawerClosed();
+                holder.laidOutOffset = lp.onScreen;
+                holder.laidOutSize = policy.getSize(drawerView);
+                holder.laidOutPosition = policy.getPosition(drawerView);
+                drawerView.dispatchVisibleRect(getWidth(), getHeight());
             }
+            updateScrim();
+        } finally {
+            mInLayout=false;
+            DrawerTrace.endSection();
         }
-        mInLayout=false;
         mFirstLayout=false;
     }
 
+    /**
+     * Move a drawer along its drag axis to the absolute position for an offset.  The result
+     * only depends on the offset and the drawer/layout sizes, so repeated layout passes
+     * leave the drawer where it is.
+     * @param drawerView    the drawer
+     * @param onScreen      offset of the drawer, from 0-1
+     */
+    private void positionDrawer(DraggedDrawer drawerView, float onScreen) {
+        final OrientationPolicy policy = drawerView.mPolicy;
+        final int position = policy.getPositionForOffset(onScreen, policy.getSize(drawerView),
+                drawerView.getHandleSize(), policy.getParentSize(getWidth(), getHeight()));
+        policy.offsetPosition(drawerView, position - policy.getPosition(drawerView));
+    }
+
     @Override
     public void addView(View child) {
         super.addView(child);
@@ -332,24 +1170,73 @@ public class DragLayout extends RelativeLayout {
             helper.setMinVelocity(minFlingVelocity);
             callback.setDragHelper(helper);
             callback.setDragView(dragView);
-            mDrawers.put(dragView, new DrawerHolder(helper, callback));
+            final DrawerHolder holder = new DrawerHolder(dragView, helper, callback, new DrawerSettler(dragView, callback));
+            mDrawers.put(dragView, holder);
+            mHolders.add(holder);
+            if(mStateStore!=null && mStoredStateApplied && mFirstLayout)
+                applyStoredState(dragView);
+            if(mOccluders.length<mDrawers.size()) {
+                final Rect[] occluders = new Rect[mDrawers.size()];
+                System.arraycopy(mOccluders, 0, occluders, 0, mOccluders.length);
+                for(int i=mOccluders.length; i<occluders.length; i++)
+                    occluders[i] = new Rect();
+                mOccluders = occluders;
+                mOccluderIndices = new int[occluders.length];
+            }
         }
     }
 
     @Override
     public boolean onInterceptTouchEvent(MotionEvent ev) {
+        DrawerTrace.beginSection(TRACE_INTERCEPT);
+        final long start = System.nanoTime();
+        final boolean intercept;
+        try {
+            intercept = interceptTouchEvent(ev);
+        } finally {
+            DrawerTrace.endSection();
+        }
+        mMetrics.interceptTime += System.nanoTime()-start;
+        if(intercept)
+            mMetrics.interceptedEvents++;
+        else
+            mMetrics.passedThroughEvents++;
+        //moves are only interesting once they are intercepted, which ends interception
+        final int action = ev.getAction() & MotionEventCompat.ACTION_MASK;
+        if(mFlightRecorder!=null && (intercept || action!=MotionEvent.ACTION_MOVE))
+            mFlightRecorder.record(FlightRecorder.EVENT_INTERCEPT, FlightRecorder.NO_DRAWER, action, intercept ? 1 : 0, 0);
+        return intercept;
+    }
+
+    private boolean interceptTouchEvent(MotionEvent ev) {
+        if(mGestureRecorder!=null)
+            mGestureRecorder.record(ev, GestureRecorder.TARGET_INTERCEPT);
+        final int maskedAction = ev.getAction() & MotionEventCompat.ACTION_MASK;
+        if(maskedAction==MotionEvent.ACTION_DOWN) {
+            mGestureClass = classifyGesture(ev.getX(), ev.getY());
+        } else if(maskedAction==MotionEventCompat.ACTION_POINTER_DOWN) {
+            final int index = MotionEventCompat.getActionIndex(ev);
+            mGestureClass = Math.max(mGestureClass,
+                    classifyGesture(MotionEventCompat.getX(ev, index), MotionEventCompat.getY(ev, index)));
+        } else if(mFastReject && mGestureClass==GESTURE_NONE
+                && maskedAction!=MotionEvent.ACTION_UP && maskedAction!=MotionEvent.ACTION_CANCEL) {
+            //the helpers have seen the down, so they are reset, and nothing here can start a drag
+            mMetrics.rejectedEvents++;
+            return false;
+        }
         boolean interceptForDrag = false;
         boolean interceptForTap = false;
 
-        for(DrawerHolder holder : mDrawers.values()) {
-            interceptForDrag |= holder.helper.shouldInterceptTouchEvent(ev);
+        for(int i=0; i<mHolders.size(); i++) {
+            interceptForDrag |= mHolders.get(i).helper.shouldInterceptTouchEvent(ev);
         }
         interceptForDrag |= mEdgeDragHelper.shouldInterceptTouchEvent(ev);
 
         final int action = ev.getAction();
         switch (action) {
             case MotionEvent.ACTION_DOWN: {
-                Log.v(TAG, "onInterceptTouchEvent.ACTION_DOWN");
+                if(Log.isLoggable(TAG, Log.VERBOSE))
+                    Log.v(TAG, "onInterceptTouchEvent.ACTION_DOWN");
                 final float x = ev.getX();
                 final float y = ev.getY();
                 mInitialMotionX = x;
@@ -362,22 +1249,43 @@ public class DragLayout extends RelativeLayout {
             }
             case MotionEvent.ACTION_UP:
             case MotionEvent.ACTION_CANCEL: {
-                Log.v(TAG, "onInterceptTouchEvent.ACTION_CANCEL");
+                if(Log.isLoggable(TAG, Log.VERBOSE))
+                    Log.v(TAG, "onInterceptTouchEvent.ACTION_CANCEL");
                 break;
             }
         }
-        if(interceptForDrag)
-            Log.v(TAG, "interceptForDrag");
-        if(interceptForTap)
-            Log.v(TAG, "interceptForTap");
+        if(Log.isLoggable(TAG, Log.VERBOSE)) {
+            if(interceptForDrag)
+                Log.v(TAG, "interceptForDrag");
+            if(interceptForTap)
+                Log.v(TAG, "interceptForTap");
+        }
         return interceptForDrag || interceptForTap;
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        for(DrawerHolder holder : mDrawers.values())
-            holder.helper.processTouchEvent(event);
+        DrawerTrace.beginSection(TRACE_TOUCH);
+        final long start = System.nanoTime();
+        final boolean handled;
+        try {
+            handled = handleTouchEvent(event);
+        } finally {
+            DrawerTrace.endSection();
+        }
+        mMetrics.touchTime += System.nanoTime()-start;
+        mMetrics.touchEvents++;
+        return handled;
+    }
+
+    private boolean handleTouchEvent(MotionEvent event) {
+        if(mGestureRecorder!=null)
+            mGestureRecorder.record(event, GestureRecorder.TARGET_TOUCH);
+        for(int i=0; i<mHolders.size(); i++)
+            mHolders.get(i).helper.processTouchEvent(event);
         mEdgeDragHelper.processTouchEvent(event);
+        if(mPredictionLead>0)
+            applyTouchPrediction(event);
 
         final int action = event.getAction();
         final float x = event.getX();
@@ -414,14 +1322,63 @@ public class DragLayout extends RelativeLayout {
         return true;
     }
 
+    /**
+     * Translate the dragged drawer by the distance the pointer is predicted to travel
+     * within {@link #mPredictionLead}, clamped to the drawer's range.
+     * @param event the touch event already processed by the drag helpers
+     */
+    private void applyTouchPrediction(MotionEvent event) {
+        final int action = event.getAction() & MotionEventCompat.ACTION_MASK;
+        if(action==MotionEvent.ACTION_DOWN)
+            mTouchPredictor.clear();
+        DraggedDrawer dragging = null;
+        DrawerHolder holder = null;
+        for(int i=0; i<mHolders.size(); i++) {
+            if(mHolders.get(i).helper.getViewDragState()==STATE_DRAGGING) {
+                holder = mHolders.get(i);
+                dragging = holder.drawer;
+                break;
+            }
+        }
+        if(dragging==null || action==MotionEvent.ACTION_UP || action==MotionEvent.ACTION_CANCEL) {
+            clearTouchPrediction();
+            return;
+        }
+        if(dragging!=mPredictedDrawer)
+            clearTouchPrediction();
+        mPredictedDrawer = dragging;
+        mTouchPredictor.addMovement(event, holder.helper.getActivePointerId());
+
+        final OrientationPolicy policy = dragging.mPolicy;
+        final int position = policy.getPosition(dragging);
+        final int delta = Math.round(policy.isHorizontal()
+                ? mTouchPredictor.predictDeltaX(mPredictionLead) : mTouchPredictor.predictDeltaY(mPredictionLead));
+        final int predicted = holder.callback.mBounds.clamp(position+delta);
+        policy.setAxisTranslation(dragging, predicted - position);
+    }
+
+    private void clearTouchPrediction() {
+        if(mPredictedDrawer!=null) {
+            mPredictedDrawer.setTranslationX(0);
+            mPredictedDrawer.setTranslationY(0);
+            mPredictedDrawer = null;
+        }
+        mTouchPredictor.clear();
+    }
+
     @Override
     public void requestLayout() {
         if (!mInLayout)
             super.requestLayout();
+        else
+            mMetrics.suppressedLayoutRequests++;
     }
 
-    @Override
-    public void computeScroll() {
+    /**
+     * Shade the background according to the most open drawer.  Only touches the
+     * background when the color actually changes.
+     */
+    private void updateScrim() {
         final int childCount = getChildCount();
         float scrimOpacity = 0;
         for (int i = 0; i < childCount; i++) {
@@ -433,20 +1390,17 @@ public class DragLayout extends RelativeLayout {
         final int baseAlpha = (mScrimColor & 0xff000000) >>> 24;
         final int imag = (int) (baseAlpha * mScrimOpacity);
         final int color = imag << 24 | (mScrimColor & 0xffffff);
-        setBackgroundColor(color);
-
-        // "|" used on purpose; both need to run.
-        boolean invalidate=false;
-        for(DrawerHolder holder : mDrawers.values())
-            invalidate |= holder.helper.continueSettling(true);
-        if (invalidate)
-            ViewCompat.postInvalidateOnAnimation(this);
+        if(!mScrimApplied || color!=mAppliedScrimColor) {
+            mScrimApplied=true;
+            mAppliedScrimColor=color;
+            setBackgroundColor(color);
+        }
     }
 
     private View findVisibleDrawer() {
-        for(DraggedDrawer drawer : mDrawers.keySet())
-            if(isDrawerVisible(drawer))
-                return drawer;
+        for(int i=0; i<mHolders.size(); i++)
+            if(isDrawerVisible(mHolders.get(i).drawer))
+                return mHolders.get(i).drawer;
         return null;
     }
 
@@ -490,22 +1444,32 @@ public class DragLayout extends RelativeLayout {
      * Should be called whenever a ViewDragHelper's state changes to notify listeners.
      */
     void updateDrawerState(int activeState, DraggedDrawer activeDrawer) {
-        if(activeState!=activeDrawer.mState) {
+        final boolean drawerChanged = activeState!=activeDrawer.mState;
+        if(drawerChanged) {
             activeDrawer.setDrawerState(activeState);
-            if(activeDrawer.mListener!=null)
-                activeDrawer.mListener.onDrawerStateChanged(activeState);
+            if(activeDrawer.mListeners.has(LISTEN_STATE)) {
+                DrawerTrace.beginSection(activeDrawer.mTraceListeners);
+                try {
+                    activeDrawer.dispatchDrawerStateChanged(activeState);
+                } finally {
+                    DrawerTrace.endSection();
+                }
+            }
+            if(activeDrawer.mListeners.hasBackground(LISTEN_STATE))
+                mBackground.postDrawerState(activeDrawer, activeState);
         }
         int state = -1;
 
-        for(DrawerHolder holder : mDrawers.values()) {
-            if(holder.helper.getViewDragState() == STATE_DRAGGING) {
+        for(int i=0; i<mHolders.size(); i++) {
+            if(mHolders.get(i).helper.getViewDragState() == STATE_DRAGGING) {
                 state = STATE_DRAGGING;
                 break;
             }
         }
         if(state==-1) {
-            for(DrawerHolder holder : mDrawers.values()) {
-                if(holder.helper.getViewDragState() == STATE_SETTLING) {
+            for(int i=0; i<mHolders.size(); i++) {
+                final DrawerHolder holder = mHolders.get(i);
+                if(holder.helper.getViewDragState() == STATE_SETTLING || holder.settler.isRunning()) {
                     state = STATE_SETTLING;
                     break;
                 }
@@ -516,16 +1480,32 @@ public class DragLayout extends RelativeLayout {
 
         if (activeDrawer != null && activeState == STATE_IDLE) {
             final LayoutParams lp = getDragLayoutParams(activeDrawer);
-            if (lp.onScreen == 0)
+            if (lp.onScreen == 0) {
                 dispatchOnDrawerClosed(activeDrawer);
+                markClosed(mDrawers.get(activeDrawer));
+            }
             else if (lp.onScreen == 1)
                 dispatchOnDrawerOpened(activeDrawer);
         }
 
+        if(mFlightRecorder!=null && (drawerChanged || state!=mDrawerState))
+            mFlightRecorder.record(FlightRecorder.EVENT_STATE, activeDrawer.getId(), activeState, state, 0);
+
         if (state != mDrawerState) {
             mDrawerState = state;
-            if (mListener != null)
-                mListener.onDrawerStateChanged(state);
+            if (mListeners.has(LISTEN_STATE)) {
+                DrawerTrace.beginSection(TRACE_LISTENERS);
+                try {
+                    final ListenerRegistry.Entry<DrawerListener>[] listeners = mListeners.entries();
+                    for(int i=0; i<listeners.length; i++)
+                        if(listeners[i].accepts(LISTEN_STATE))
+                            listeners[i].listener.onDrawerStateChanged(state);
+                } finally {
+                    DrawerTrace.endSection();
+                }
+            }
+            if(mListeners.hasBackground(LISTEN_STATE))
+                mBackground.postLayoutState(state);
         }
     }
 
@@ -533,11 +1513,12 @@ public class DragLayout extends RelativeLayout {
         final LayoutParams lp = (LayoutParams) drawerView.getLayoutParams();
         if (slideOffset == lp.onScreen)
             return;
+        if(lp.onScreen==0f)
+            mDrawers.get(drawerView).closeReported = false;
         lp.onScreen = slideOffset;
         lp.knownOpen = slideOffset==1f;
+        updateScrim();
         dispatchOnDrawerSlide(drawerView, slideOffset);
-        if(drawerView.mListener!=null)
-            drawerView.mListener.onDrawerSlide(slideOffset);
     }
 
     float getDrawerViewOffset(View drawerView) {
@@ -549,10 +1530,26 @@ public class DragLayout extends RelativeLayout {
      * @param drawerView    The drawer relevant to the event
      */
     private void dispatchOnDrawerClosed(DraggedDrawer drawerView) {
-        if (mListener != null)
-            mListener.onDrawerClosed(drawerView);
-        if(drawerView.mListener!=null)
-            drawerView.mListener.onDrawerClosed();
+        final DrawerHolder holder = mDrawers.get(drawerView);
+        final boolean tellDrawer = !holder.closeReported;
+        DrawerTrace.beginSection(drawerView.mTraceListeners);
+        try {
+            final ListenerRegistry.Entry<DrawerListener>[] listeners = mListeners.entries();
+            for(int i=0; i<listeners.length; i++)
+                if(listeners[i].accepts(LISTEN_CLOSED))
+                    listeners[i].listener.onDrawerClosed(drawerView);
+            //the layout pass may have told the drawer already
+            if(tellDrawer) {
+                holder.closeReported = true;
+                drawerView.dispatchDrawerClosed();
+            }
+        } finally {
+            DrawerTrace.endSection();
+        }
+        if(tellDrawer && hasBackgroundListener(drawerView, LISTEN_CLOSED))
+            mBackground.postClosed(drawerView);
+        else if(!tellDrawer && mListeners.hasBackground(LISTEN_CLOSED))
+            mBackground.postLayoutClosed(drawerView);
         sendAccessibilityEvent(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
     }
 
@@ -561,10 +1558,18 @@ public class DragLayout extends RelativeLayout {
      * @param drawerView    The drawer relevant to the event
      */
     private void dispatchOnDrawerOpened(DraggedDrawer drawerView) {
-        if (mListener != null)
-            mListener.onDrawerOpened(drawerView);
-        if(drawerView.mListener!=null)
-            drawerView.mListener.onDrawerOpened();
+        DrawerTrace.beginSection(drawerView.mTraceListeners);
+        try {
+            final ListenerRegistry.Entry<DrawerListener>[] listeners = mListeners.entries();
+            for(int i=0; i<listeners.length; i++)
+                if(listeners[i].accepts(LISTEN_OPENED))
+                    listeners[i].listener.onDrawerOpened(drawerView);
+            drawerView.dispatchDrawerOpened();
+        } finally {
+            DrawerTrace.endSection();
+        }
+        if(hasBackgroundListener(drawerView, LISTEN_OPENED))
+            mBackground.postOpened(drawerView);
         drawerView.sendAccessibilityEvent(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED);
     }
 
@@ -573,8 +1578,19 @@ public class DragLayout extends RelativeLayout {
      * @param drawerView    The drawer relevant to the event
      */
     private void dispatchOnDrawerOpening(DraggedDrawer drawerView) {
-        if (mListener != null)
-            mListener.onDrawerOpening(drawerView);
+        if (mListeners.has(LISTEN_OPENING)) {
+            DrawerTrace.beginSection(drawerView.mTraceListeners);
+            try {
+                final ListenerRegistry.Entry<DrawerListener>[] listeners = mListeners.entries();
+                for(int i=0; i<listeners.length; i++)
+                    if(listeners[i].accepts(LISTEN_OPENING))
+                        listeners[i].listener.onDrawerOpening(drawerView);
+            } finally {
+                DrawerTrace.endSection();
+            }
+        }
+        if(mListeners.hasBackground(LISTEN_OPENING))
+            mBackground.postOpening(drawerView);
 //        if(drawerView.mListener!=null)
 //            drawerView.mListener.onDrawerOpening();
     }
@@ -584,43 +1600,122 @@ public class DragLayout extends RelativeLayout {
      * @param drawerView    The drawer relevant to the event
      */
     private void dispatchOnDrawerSlide(DraggedDrawer drawerView, float slideOffset) {
-        if (mListener != null)
-            mListener.onDrawerSlide(drawerView, slideOffset);
-        if(drawerView.mListener!=null)
-            drawerView.mListener.onDrawerSlide(slideOffset);
+        mMetrics.slideCallbacks++;
+        if(hasBackgroundListener(drawerView, LISTEN_SLIDE))
+            mBackground.postSlide(drawerView, slideOffset);
+        //the per-pixel path: skip the trace section too when nobody listens
+        if(!mListeners.has(LISTEN_SLIDE) && !drawerView.mListeners.has(LISTEN_SLIDE))
+            return;
+        DrawerTrace.beginSection(drawerView.mTraceListeners);
+        try {
+            final ListenerRegistry.Entry<DrawerListener>[] listeners = mListeners.entries();
+            for(int i=0; i<listeners.length; i++)
+                if(listeners[i].accepts(LISTEN_SLIDE))
+                    listeners[i].listener.onDrawerSlide(drawerView, slideOffset);
+            drawerView.dispatchDrawerSlide(slideOffset);
+        } finally {
+            DrawerTrace.endSection();
+        }
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        mOccluderCount=0;
+        if(mOcclusionCulling && !isInEditMode()) {
+            for(int i=getChildCount()-1; i>=0; i--) {
+                final View child = getChildAt(i);
+                if(!(child instanceof DraggedDrawer))
+                    continue;
+                final DraggedDrawer drawer = (DraggedDrawer)child;
+                if(drawer.isOpaqueContent() && getDragLayoutParams(drawer).onScreen==1f
+                        && drawer.getMatrix().isIdentity()
+                        && drawer.getContentBounds(mOccluders[mOccluderCount])) {
+                    mOccluderIndices[mOccluderCount++] = i;
+                }
+            }
+        }
+        super.dispatchDraw(canvas);
+    }
+
+    /**
+     * Remove the parts of a child hidden behind opaque drawers above it.
+     * @param child     the child about to be drawn
+     * @param bounds    child bounds, shrunk to the part which is not covered
+     * @return <code>false</code> if the child is completely covered
+     */
+    private boolean clipOccluded(View child, Rect bounds) {
+        final int index = indexOfChild(child);
+        for(int i=0; i<mOccluderCount; i++) {
+            if(mOccluderIndices[i]<=index)
+                continue;
+            final Rect occluder = mOccluders[i];
+            if(occluder.contains(bounds))
+                return false;
+            //only strips spanning a whole side leave a rectangle behind
+            if(occluder.left<=bounds.left && occluder.right>=bounds.right) {
+                if(occluder.top<=bounds.top && occluder.bottom>bounds.top)
+                    bounds.top = occluder.bottom;
+                else if(occluder.bottom>=bounds.bottom && occluder.top<bounds.bottom)
+                    bounds.bottom = occluder.top;
+            } else if(occluder.top<=bounds.top && occluder.bottom>=bounds.bottom) {
+                if(occluder.left<=bounds.left && occluder.right>bounds.left)
+                    bounds.left = occluder.right;
+                else if(occluder.right>=bounds.right && occluder.left<bounds.right)
+                    bounds.right = occluder.left;
+            }
+        }
+        return true;
     }
 
     @Override
     protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if(!(child instanceof DraggedDrawer))
+            return drawClipped(canvas, child, drawingTime);
+        DrawerTrace.beginSection(((DraggedDrawer)child).mTraceDraw);
+        try {
+            return drawClipped(canvas, child, drawingTime);
+        } finally {
+            DrawerTrace.endSection();
+        }
+    }
+
+    private boolean drawClipped(Canvas canvas, View child, long drawingTime) {
+        mClipRect.set(child.getLeft(), child.getTop(), child.getRight(), child.getBottom());
+        boolean clip = false;
+        if(mOccluderCount>0 && child.getMatrix().isIdentity()) {
+            if(!clipOccluded(child, mClipRect))
+                return false;
+            clip = mClipRect.left!=child.getLeft() || mClipRect.top!=child.getTop()
+                    || mClipRect.right!=child.getRight() || mClipRect.bottom!=child.getBottom();
+        }
         if(child instanceof DraggedDrawer) {
             final DraggedDrawer dragView = (DraggedDrawer)child;
             final LayoutParams lp = getDragLayoutParams(dragView);
             if(dragView.getShadowDrawable() != null && lp.onScreen>0f) {
                 Drawable shadow = dragView.getShadowDrawable();
-                final int shadowWidth = shadow.getIntrinsicWidth();
-                final int shadowHeight = shadow.getIntrinsicHeight();
-                switch(dragView.getDrawerType()) {
-                    case DRAWER_LEFT:
-                        final int childRight = child.getRight()-dragView.getHandleSize();
-                        shadow.setBounds(childRight, child.getTop(), childRight + shadowWidth, child.getBottom());
-                        break;
-                    case DRAWER_RIGHT:
-                        final int childLeft = child.getLeft()+dragView.getHandleSize();
-                        shadow.setBounds(childLeft-shadowWidth, child.getTop(), childLeft, child.getBottom());
-                        break;
-                    case DRAWER_TOP:
-                        final int childBottom = child.getBottom()-dragView.getHandleSize();
-                        shadow.setBounds(child.getLeft(), childBottom, child.getRight(), childBottom+shadowHeight);
-                        break;
-                    case DRAWER_BOTTOM:
-                        final int childTop = child.getTop()+dragView.getHandleSize();
-                        shadow.setBounds(child.getLeft(), childTop-shadowHeight, child.getRight(), childTop);
-                        break;
+                dragView.mPolicy.setShadowBounds(shadow, child, dragView.getHandleSize());
+                if(child.getTranslationX()!=0 || child.getTranslationY()!=0) {
+                    final int saveCount = canvas.save();
+                    canvas.translate(child.getTranslationX(), child.getTranslationY());
+                    shadow.draw(canvas);
+                    canvas.restoreToCount(saveCount);
+                } else {
+                    shadow.draw(canvas);
                 }
-                shadow.draw(canvas);
             }
+            //only rasterize the part of the drawer which is inside the layout
+            mClipRect.offset((int)child.getTranslationX(), (int)child.getTranslationY());
+            if(!mClipRect.intersect(0, 0, getWidth(), getHeight()))
+                return false;
+            clip = true;
         }
-        return super.drawChild(canvas, child, drawingTime);
+        if(!clip)
+            return super.drawChild(canvas, child, drawingTime);
+        final int saveCount = canvas.save();
+        canvas.clipRect(mClipRect);
+        final boolean result = super.drawChild(canvas, child, drawingTime);
+        canvas.restoreToCount(saveCount);
+        return result;
     }
 
     @Override
@@ -638,8 +1733,10 @@ public class DragLayout extends RelativeLayout {
     @Override
     protected Parcelable onSaveInstanceState() {
         final SavedState ss = new SavedState(super.onSaveInstanceState());
+        persistDrawerState();
 
-        for(DraggedDrawer drawer : mDrawers.keySet()) {
+        for(int i=0; i<mHolders.size(); i++) {
+            final DraggedDrawer drawer = mHolders.get(i).drawer;
             if (getDragLayoutParams(drawer).knownOpen) {
                 ss.openDrawerId = drawer.getId();
                 break;
@@ -691,7 +1788,8 @@ public class DragLayout extends RelativeLayout {
 
         @Override
         public void onEdgeDragStarted(int edgeFlags, int pointerId) {
-            Log.v(TAG, String.format("EdgeHelperDrag started @ %1$d x %2$d", (int)mInitialMotionX, (int)mInitialMotionY));
+            if(Log.isLoggable(TAG, Log.VERBOSE))
+                Log.v(TAG, "EdgeHelperDrag started @ " + (int)mInitialMotionX + " x " + (int)mInitialMotionY);
             int drawerType = 0;
             if((edgeFlags&ViewDragHelper.EDGE_LEFT) == edgeFlags)
                 drawerType = DRAWER_LEFT;
@@ -725,8 +1823,9 @@ public class DragLayout extends RelativeLayout {
                     }
                 }
             }
-            if(drawer!=null) {
-                Log.v(TAG, "Edge Capturing : " + drawer);
+            if(drawer!=null && canCapture(drawer)) {
+                if(Log.isLoggable(TAG, Log.VERBOSE))
+                    Log.v(TAG, "Edge Capturing : " + drawer);
                 mDrawers.get(drawer).helper.captureChildView(drawer, pointerId);
             }
         }
@@ -744,6 +1843,8 @@ public class DragLayout extends RelativeLayout {
 
         private ViewDragHelper mHelper;
         private DraggedDrawer mDragView;
+        /** Bounds of {@link #mDragView}, refreshed every layout pass */
+        private final DragBounds mBounds = new DragBounds();
 
         public void setDragHelper(ViewDragHelper helper) {
             mHelper = helper;
@@ -753,39 +1854,35 @@ public class DragLayout extends RelativeLayout {
             mDragView = view;
         }
 
+        /**
+         * Take the drag bounds from the drawer's current size and the layout size
+         */
+        void updateBounds() {
+            final OrientationPolicy policy = mDragView.mPolicy;
+            mBounds.update(policy, policy.getSize(mDragView), mDragView.getHandleSize(),
+                    policy.getParentSize(getWidth(), getHeight()));
+        }
+
         @Override
         public boolean tryCaptureView(View child, int pointerId) {
-            return child == mDragView;
+            return child == mDragView && canCapture(mDragView);
         }
 
         @Override
         public void onViewDragStateChanged(int state) {
-            updateDrawerState(state, (DraggedDrawer)mHelper.getCapturedView());
+            //the helper goes idle on release, while our settler takes over
+            if(state==STATE_IDLE && mDrawers.get(mDragView).settler.isRunning())
+                state = STATE_SETTLING;
+            updateDrawerState(state, mDragView);
         }
 
         @Override
         public void onViewPositionChanged(View changedView, int left, int top, int dx, int dy) {
-            float offset=0;
             final DraggedDrawer dragView = (DraggedDrawer)changedView;
-            final int childWidth = dragView.getWidth()-dragView.getHandleSize();
-            final int childHeight = dragView.getHeight()-dragView.getHandleSize();
-
-            switch(dragView.getDrawerType()) {
-                case DRAWER_LEFT:
-                    offset = (float) (childWidth + left) / childWidth;
-                    break;
-                case DRAWER_RIGHT:
-                    offset = (float) (getWidth() - left - dragView.getHandleSize()) / childWidth;
-                    break;
-                case DRAWER_TOP:
-                    offset = (float) (childHeight + top) / childHeight;
-                    break;
-                case DRAWER_BOTTOM:
-                    offset = (float) (getHeight() - top - dragView.getHandleSize()) / childHeight;
-                    break;
-            }
+            final float offset = mBounds.getOffset(dragView.mPolicy.getAxisComponent(left, top));
             setDrawerViewOffset(dragView, offset);
             dragView.setContentVisibility(offset > 0f ? VISIBLE : INVISIBLE);
+            dragView.dispatchVisibleRect(getWidth(), getHeight());
             invalidate();
         }
 
@@ -793,9 +1890,19 @@ public class DragLayout extends RelativeLayout {
         public void onViewCaptured(View capturedChild, int activePointerId) {
             final DraggedDrawer dragView = (DraggedDrawer)capturedChild;
             final LayoutParams lp = (LayoutParams) capturedChild.getLayoutParams();
+            final DrawerHolder holder = mDrawers.get(dragView);
+            final DrawerSettler settler = holder.settler;
+            holder.closedAt = 0;
+            dragView.restoreContent();
+            if(mFlightRecorder!=null)
+                mFlightRecorder.record(FlightRecorder.EVENT_CAPTURE, dragView.getId(), activePointerId, lp.onScreen, 0);
+            if(settler.isRunning()) {
+                mMetrics.settlesInterrupted++;
+                settler.cancel();
+            }
             if(lp.onScreen==0f)
                 dispatchOnDrawerOpening(dragView);
-            closeAllDrawers(dragView);
+            closeExclusiveDrawers(dragView);
             if(dragView.getHandle()!=null)
                 dragView.getHandle().setPressed(true);
         }
@@ -803,32 +1910,18 @@ public class DragLayout extends RelativeLayout {
         @Override
         public void onViewReleased(View releasedChild, float xvel, float yvel) {
             final float offset = getDrawerViewOffset(releasedChild);
-            final int childWidth = releasedChild.getWidth();
-            final int childHeight = releasedChild.getHeight();
             final DraggedDrawer dragView = (DraggedDrawer)releasedChild;
+            final OrientationPolicy policy = dragView.mPolicy;
+            if(mFlightRecorder!=null)
+                mFlightRecorder.record(FlightRecorder.EVENT_RELEASE, dragView.getId(), 0, xvel, yvel);
             if(dragView.getHandle()!=null)
                 dragView.getHandle().setPressed(false);
+            if(dragView==mPredictedDrawer)
+                clearTouchPrediction();
 
-            int left=releasedChild.getLeft();
-            int top=releasedChild.getTop();
-            switch(dragView.getDrawerType()) {
-                case DRAWER_LEFT:
-                    left = xvel > 0 || xvel == 0 && offset > .5f ? 0 : dragView.getHandleSize()-childWidth;
-                    break;
-                case DRAWER_RIGHT:
-                    final int width = getWidth();
-                    left = xvel < 0 || xvel == 0 && offset > .5f ? width-childWidth : width-dragView.getHandleSize();
-                    break;
-                case DRAWER_TOP:
-                    top = yvel > 0 || yvel == 0 && offset > .5f ? 0 : dragView.getHandleSize()-childHeight;
-                    break;
-                default:
-                    final int height = getHeight();
-                    top = yvel < 0 || yvel == 0 && offset > .5f ? height-childHeight : height-dragView.getHandleSize();
-                    break;
-
-            }
-            mHelper.settleCapturedViewAt(left, top);
+            final float velocity = policy.getAxisComponent(xvel, yvel);
+            settleDrawer(dragView, policy.getReleaseTarget(velocity, offset, policy.getSize(dragView), dragView.getHandleSize(),
+                    policy.getParentSize(getWidth(), getHeight())), velocity/1000f);
             invalidate();
         }
 
@@ -836,59 +1929,30 @@ public class DragLayout extends RelativeLayout {
         public int getViewHorizontalDragRange(View child) {
             if(!(child instanceof DraggedDrawer)) return 0;
             final DraggedDrawer dragView = (DraggedDrawer)child;
-            switch(dragView.getDrawerType()) {
-                case DRAWER_LEFT:
-                case DRAWER_RIGHT:
-                    return child.getWidth()-dragView.getHandleSize();
-                default:
-                    return 0;
-
-            }
+            return dragView.mPolicy.isHorizontal() ? child.getWidth()-dragView.getHandleSize() : 0;
         }
 
         @Override
         public int getViewVerticalDragRange(View child) {
             if(!(child instanceof DraggedDrawer)) return 0;
             final DraggedDrawer dragView = (DraggedDrawer)child;
-            switch(dragView.getDrawerType()) {
-                case DRAWER_BOTTOM:
-                case DRAWER_TOP:
-                    return child.getHeight()-dragView.getHandleSize();
-                default:
-                    return 0;
-            }
+            return dragView.mPolicy.isHorizontal() ? 0 : child.getHeight()-dragView.getHandleSize();
         }
 
         @Override
         public int clampViewPositionVertical(View child, int top, int dy) {
             final DraggedDrawer dragView = (DraggedDrawer)child;
-
-            switch(dragView.getDrawerType()) {
-                case DRAWER_TOP:
-                    return Math.max(dragView.getHandleSize() - child.getHeight(), Math.min(top, 0));
-                case DRAWER_BOTTOM:
-                    final int height = getHeight();
-                    return Math.max(height - child.getHeight(), Math.min(top, height - dragView.getHandleSize()));
-                default:
-                    return child.getTop();
-
-            }
+            if(dragView.mPolicy.isHorizontal())
+                return child.getTop();
+            return mBounds.clamp(top);
         }
 
         @Override
         public int clampViewPositionHorizontal(View child, int left, int dx) {
             final DraggedDrawer dragView = (DraggedDrawer)child;
-
-            switch(dragView.getDrawerType()) {
-                case DRAWER_LEFT:
-                    return Math.max(dragView.getHandleSize() - child.getWidth(), Math.min(left, 0));
-                case DRAWER_RIGHT:
-                    final int width = getWidth();
-                    return Math.max(width - child.getWidth(), Math.min(left, width - dragView.getHandleSize()));
-                default:
-                    return child.getLeft();
-            }
-
+            if(!dragView.mPolicy.isHorizontal())
+                return child.getLeft();
+            return mBounds.clamp(left);
         }
     }
 
@@ -925,14 +1989,28 @@ public class DragLayout extends RelativeLayout {
      * Reference to a drawer and helper functionality
      */
     public static class DrawerHolder {
+        public DraggedDrawer drawer;
         public ViewDragHelper helper;
         public DragCallback callback;
+        /** Animates the drawer after release and for programmatic open/close */
+        DrawerSettler settler;
+        /** Drawer offset applied by the last layout pass, -1 before the first one */
+        float laidOutOffset = -1f;
+        /** Size and position along the drag axis the last layout pass left the drawer at */
+        int laidOutSize;
+        int laidOutPosition;
+        /** The drawer's own listeners were told it closed, cleared when it leaves 0 */
+        boolean closeReported;
+        /** Uptime at which the drawer last closed, 0 while it is open or moving */
+        long closedAt;
 
         public DrawerHolder() {}
 
-        public DrawerHolder(ViewDragHelper helper, DragCallback callback) {
+        public DrawerHolder(DraggedDrawer drawer, ViewDragHelper helper, DragCallback callback, DrawerSettler settler) {
+            this.drawer=drawer;
             this.helper=helper;
             this.callback=callback;
+            this.settler=settler;
         }
     }
 }
@@ -2,18 +2,33 @@ package com.kedzie.drawer;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
+import android.graphics.PixelFormat;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Parcelable;
+import android.os.Process;
 import android.support.v4.widget.ViewDragHelper;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewDebug;
 import android.view.ViewGroup;
 import android.widget.LinearLayout;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 
 /**
  * Draggable drawer with content and visible handle for all orientations.  For
@@ -24,6 +39,9 @@ import android.widget.LinearLayout;
  * @attr R.styleable#Drawer_contentId
  * @attr R.styleable#Drawer_edgeDraggable
  * @attr R.styleable#Drawer_shadow
+ * @attr R.styleable#Drawer_opaqueContent
+ * @attr R.styleable#Drawer_deferLayout
+ * @attr R.styleable#Drawer_asyncContentLayout
  */
 public class DraggedDrawer extends LinearLayout {
     public static final String TAG = "DraggedDrawer";
@@ -70,6 +88,21 @@ public class DraggedDrawer extends LinearLayout {
         @Override public void onDrawerStateChanged(int newState) {}
     }
 
+    /**
+     * Implemented by drawer content which can make use of the region of itself
+     * that is currently inside the {@link DragLayout}, i.e. a list that only
+     * binds rows which are visible while the drawer is partially open.
+     */
+    public interface VisibleRectListener {
+
+        /**
+         * Called when the visible part of the content changes.
+         * @param visibleRect   visible region in the content's own coordinates.  Empty when
+         *                      the content is completely off-screen.  Do not keep a reference.
+         */
+        public void onVisibleRectChanged(Rect visibleRect);
+    }
+
     /** LEFT --> RIGHT orientation */
     public static final int DRAWER_LEFT=1;
     /** RIGHT --> LEFT orientation */
@@ -86,11 +119,39 @@ public class DraggedDrawer extends LinearLayout {
     /** Indicates that a drawer is in the process of settling to a final position. */
     public static final int STATE_SETTLING = ViewDragHelper.STATE_SETTLING;
 
+    /** Subscribe to {@link DrawerListener#onDrawerSlide(float)}, called for every pixel a drawer moves */
+    public static final int LISTEN_SLIDE = 1;
+    /** Subscribe to motion state changes */
+    public static final int LISTEN_STATE = 1<<1;
+    /** Subscribe to drawers settling open */
+    public static final int LISTEN_OPENED = 1<<2;
+    /** Subscribe to drawers settling closed */
+    public static final int LISTEN_CLOSED = 1<<3;
+    /** Subscribe to drawers starting to open.  Only reported to {@link DragLayout.DrawerListener}s */
+    public static final int LISTEN_OPENING = 1<<4;
+    /** Subscribe to every event */
+    public static final int LISTEN_ALL = LISTEN_SLIDE | LISTEN_STATE | LISTEN_OPENED | LISTEN_CLOSED | LISTEN_OPENING;
     /**
-     * Drawer-specific event listener. For events relating to any drawer,
-     * see {@link DraggedDrawer#setDrawerListener(DrawerListener)}
+     * Call the listener on a background thread instead of the UI thread, for listeners which don't
+     * touch views, i.e. analytics.  Slide events are conflated to the latest offset of each drawer;
+     * other events are all delivered, in order.
+     * @see DragLayout#setBackgroundExecutor(java.util.concurrent.Executor)
      */
-    DrawerListener mListener;
+    public static final int LISTEN_BACKGROUND = 1<<5;
+
+    /** Async content inflation progress */
+    private static final int ASYNC_NONE = 0;
+    private static final int ASYNC_WAITING = 1;
+    private static final int ASYNC_INFLATING = 2;
+    private static final int ASYNC_DONE = 3;
+
+    /**
+     * Drawer-specific event listeners. For events relating to any drawer,
+     * see {@link DragLayout#addDrawerListener(DragLayout.DrawerListener, int)}
+     */
+    final ListenerRegistry<DrawerListener> mListeners = new ListenerRegistry<DrawerListener>();
+    /** Listener set with {@link #setDrawerListener(DrawerListener)} */
+    private DrawerListener mListener;
 
     /** Handle size */
     private int mHandleSize;
@@ -98,6 +159,8 @@ public class DraggedDrawer extends LinearLayout {
     /** Drawer orientation */
     @ViewDebug.ExportedProperty(category = "layout")
     private int mDrawerType;
+    /** Orientation specific math for {@link #mDrawerType} */
+    OrientationPolicy mPolicy = OrientationPolicy.LEFT;
 
     /** Drag from edge enabled? */
     @ViewDebug.ExportedProperty(category = "layout")
@@ -117,10 +180,86 @@ public class DraggedDrawer extends LinearLayout {
     private View mContent;
     /** Drawable used for drop-shadow when drawer is visible */
     private Drawable mShadowDrawable;
+    /** Content hides whatever is behind it when the drawer is open */
+    @ViewDebug.ExportedProperty(category = "drawing")
+    private boolean mOpaqueContent;
+    /** {@link #mOpaqueContent} was declared, instead of derived from the content background */
+    private boolean mOpaqueContentSet;
+    /** Hold back layout requests while dragging or settling */
+    @ViewDebug.ExportedProperty(category = "layout")
+    private boolean mDeferLayout;
+    /** A layout request was held back and must be issued when the drawer comes to rest */
+    private boolean mLayoutDeferred;
+    /** The content view is being swapped, so its layout requests are the drawer's own */
+    private boolean mReplacingContent;
 
     /** Current state i.e. {@link DraggedDrawer#STATE_DRAGGING} {@link DraggedDrawer#STATE_IDLE} */
     int mState;
 
+    /** Latest open/close command posted from any thread, applied by the {@link DragLayout} on its next frame */
+    final AtomicInteger mPendingCommand = new AtomicInteger();
+
+    /** Scratch objects for hit testing the handle */
+    private final Rect mHandleHit = new Rect();
+    private final Point mHitPoint = new Point();
+    private final Matrix mInverse = new Matrix();
+    private final float[] mMapPoints = new float[2];
+
+    /** Trace section names, built once per id so tracing doesn't allocate */
+    String mTraceMeasure;
+    String mTraceLayout;
+    String mTraceDraw;
+    String mTraceListeners;
+
+    /** Motion used to settle this drawer, <code>null</code> to use the {@link DragLayout}'s */
+    private SettleModel mSettleModel;
+
+    /** Visible region of the content last sent to a {@link VisibleRectListener} */
+    private final Rect mVisibleRect = new Rect();
+    private final Rect mTmpRect = new Rect();
+
+    /** Supplies content pages, may be <code>null</code> */
+    private DrawerContentAdapter mContentAdapter;
+    /** Page shown by the content, -1 if the content didn't come from the adapter */
+    private int mContentPage = -1;
+    private int mContentType;
+    /** View bound to a page ahead of time while the drawer is closed, may be <code>null</code> */
+    private View mPrebound;
+    private int mPreboundPage = -1;
+    private int mPreboundType;
+
+    /** Content layout inflated in the background, the initial content is a placeholder until then */
+    private int mAsyncContentLayout;
+    private int mAsyncState = ASYNC_NONE;
+    /** Counts inflations, so the result of one superseded by a synchronous restore is dropped */
+    private int mInflation;
+    /** The drawer was asked to open before its content was ready */
+    private boolean mOpenQueued;
+    private final MessageQueue.IdleHandler mStartInflation = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            startInflation();
+            return false;
+        }
+    };
+    /** View state of content evicted while closed, <code>null</code> while the content is resident */
+    private SparseArray<Parcelable> mEvictedState;
+    /** Adapter page of the evicted content, -1 if it is re-inflated from {@link #mAsyncContentLayout} */
+    private int mEvictedPage = -1;
+
+    /** Persisted picture of the content, drawn over the placeholder until the real content is attached */
+    private Bitmap mSnapshot;
+    /** Bitmap the content is captured into for a {@link DrawerStateStore}, reused across saves */
+    private volatile Bitmap mSnapshotBuffer;
+    /** Set while a store writes {@link #mSnapshotBuffer} */
+    private final AtomicBoolean mSnapshotBufferBusy = new AtomicBoolean();
+
+    /** Delivers results of background work, whether or not the drawer is attached */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Background thread shared by all drawers inflating content and persisting state */
+    private static Handler sInflateHandler;
+
 
     public DraggedDrawer(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -131,17 +270,117 @@ public class DraggedDrawer extends LinearLayout {
             mContentId = a.getResourceId(R.styleable.Drawer_contentId, 0);
             mShadowDrawable = a.getDrawable(R.styleable.Drawer_shadow);
             mEdgeDraggable = a.getBoolean(R.styleable.Drawer_edgeDraggable, false);
+            mOpaqueContentSet = a.hasValue(R.styleable.Drawer_opaqueContent);
+            mOpaqueContent = a.getBoolean(R.styleable.Drawer_opaqueContent, false);
+            mDeferLayout = a.getBoolean(R.styleable.Drawer_deferLayout, false);
+            mAsyncContentLayout = a.getResourceId(R.styleable.Drawer_asyncContentLayout, 0);
         } finally {
             a.recycle();
         }
+        if(mAsyncContentLayout!=0)
+            mAsyncState = ASYNC_WAITING;
+        mPolicy = OrientationPolicy.forType(mDrawerType);
+        buildTraceSections();
     }
 
     /**
-     * Subscribe to drawer events
-     * @param listener  the listener
+     * Create a drawer in code
+     * @param context       the context
+     * @param drawerType    {@link #DRAWER_LEFT}, {@link #DRAWER_RIGHT}, {@link #DRAWER_TOP} or {@link #DRAWER_BOTTOM}
+     * @param handle        the handle, may be <code>null</code>
+     * @param content       the content
+     */
+    public DraggedDrawer(Context context, int drawerType, View handle, View content) {
+        this(context, null);
+        mDrawerType = drawerType;
+        mPolicy = OrientationPolicy.forType(drawerType);
+        mHandle = handle;
+        mContent = content;
+        addDrawerViews(handle!=null && handle.getLayoutParams() instanceof LayoutParams
+                ? (LayoutParams) handle.getLayoutParams() : generateDefaultLayoutParams());
+    }
+
+    @Override
+    public void setId(int id) {
+        super.setId(id);
+        buildTraceSections();
+    }
+
+    private void buildTraceSections() {
+        mTraceMeasure = DrawerTrace.sectionName(this, TAG, "onMeasure");
+        mTraceLayout = DrawerTrace.sectionName(this, TAG, "onLayout");
+        mTraceDraw = DrawerTrace.sectionName(this, TAG, "draw");
+        mTraceListeners = DrawerTrace.sectionName(this, TAG, "listeners");
+    }
+
+    /**
+     * Subscribe to drawer events, replacing the listener previously set with this method.
+     * Listeners added with {@link #addDrawerListener(DrawerListener, int)} are kept.
+     * @param listener  the listener, <code>null</code> to remove it
      */
     public void setDrawerListener(DrawerListener listener) {
+        if(mListener!=null)
+            mListeners.remove(mListener);
         mListener = listener;
+        if(listener!=null)
+            mListeners.add(listener, LISTEN_ALL);
+    }
+
+    /**
+     * Subscribe to all drawer events
+     * @param listener  the listener
+     */
+    public void addDrawerListener(DrawerListener listener) {
+        mListeners.add(listener, LISTEN_ALL);
+    }
+
+    /**
+     * Subscribe to some drawer events.  Listeners are not called for the other events, which
+     * keeps listeners only interested in the drawer opening and closing off the slide path.
+     * Adding a listener again changes its events.
+     * @param listener  the listener
+     * @param events    <code>LISTEN_*</code> flags, i.e. <code>LISTEN_OPENED | LISTEN_CLOSED</code>
+     */
+    public void addDrawerListener(DrawerListener listener, int events) {
+        mListeners.add(listener, events);
+    }
+
+    /**
+     * @param listener  a listener added with {@link #addDrawerListener(DrawerListener, int)} or
+     *                  {@link #setDrawerListener(DrawerListener)}
+     */
+    public void removeDrawerListener(DrawerListener listener) {
+        if(listener==mListener)
+            mListener = null;
+        mListeners.remove(listener);
+    }
+
+    void dispatchDrawerSlide(float slideOffset) {
+        final ListenerRegistry.Entry<DrawerListener>[] listeners = mListeners.entries();
+        for(int i=0; i<listeners.length; i++)
+            if(listeners[i].accepts(LISTEN_SLIDE))
+                listeners[i].listener.onDrawerSlide(slideOffset);
+    }
+
+    void dispatchDrawerOpened() {
+        final ListenerRegistry.Entry<DrawerListener>[] listeners = mListeners.entries();
+        for(int i=0; i<listeners.length; i++)
+            if(listeners[i].accepts(LISTEN_OPENED))
+                listeners[i].listener.onDrawerOpened();
+    }
+
+    void dispatchDrawerClosed() {
+        final ListenerRegistry.Entry<DrawerListener>[] listeners = mListeners.entries();
+        for(int i=0; i<listeners.length; i++)
+            if(listeners[i].accepts(LISTEN_CLOSED))
+                listeners[i].listener.onDrawerClosed();
+    }
+
+    void dispatchDrawerStateChanged(int newState) {
+        final ListenerRegistry.Entry<DrawerListener>[] listeners = mListeners.entries();
+        for(int i=0; i<listeners.length; i++)
+            if(listeners[i].accepts(LISTEN_STATE))
+                listeners[i].listener.onDrawerStateChanged(newState);
     }
 
     @Override
@@ -152,37 +391,118 @@ public class DraggedDrawer extends LinearLayout {
         //keep the original layout params
         final LayoutParams handleParams = mHandle!=null ? (LayoutParams) mHandle.getLayoutParams() : null;
         removeAllViews();
+        addDrawerViews(handleParams);
+    }
 
-        switch(mDrawerType) {
-            case DRAWER_LEFT:
-                setOrientation(HORIZONTAL);
-                addView(mContent, new LayoutParams(0, ViewGroup.LayoutParams.MATCH_PARENT, 1));
-                if(mHandle!=null) addView(mHandle, handleParams);
-                break;
-            case DRAWER_RIGHT:
-                setOrientation(HORIZONTAL);
-                if(mHandle!=null) addView(mHandle, handleParams);
-                addView(mContent, new LayoutParams(0, ViewGroup.LayoutParams.MATCH_PARENT, 1));
-                break;
-            case DRAWER_TOP:
-                setOrientation(VERTICAL);
-                addView(mContent, new LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 0, 1));
-                if(mHandle!=null) addView(mHandle, handleParams);
-                break;
-            case DRAWER_BOTTOM:
-                setOrientation(VERTICAL);
-                if(mHandle!=null) addView(mHandle, handleParams);
-                addView(mContent, new LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 0, 1));
-                break;
-        }
+    /**
+     * Add the handle and content in the order the drawer type needs
+     */
+    private void addDrawerViews(LayoutParams handleParams) {
+        setOrientation(mPolicy.getLinearOrientation());
+        final LayoutParams contentParams = mPolicy.isHorizontal()
+                ? new LayoutParams(0, ViewGroup.LayoutParams.MATCH_PARENT, 1)
+                : new LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 0, 1);
+        if(mHandle!=null && mPolicy.isHandleLeading())
+            addView(mHandle, handleParams);
+        addView(mContent, contentParams);
+        if(mHandle!=null && !mPolicy.isHandleLeading())
+            addView(mHandle, handleParams);
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-        if(mHandle!=null) {
-            mHandleSize = (mDrawerType==DRAWER_LEFT || mDrawerType==DRAWER_RIGHT) ?
-                    mHandle.getMeasuredWidth() : mHandle.getMeasuredHeight();
+        DrawerTrace.beginSection(mTraceMeasure);
+        try {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            if(mHandle!=null)
+                mHandleSize = mPolicy.getMeasuredSize(mHandle);
+        } finally {
+            DrawerTrace.endSection();
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        DrawerTrace.beginSection(mTraceLayout);
+        try {
+            super.onLayout(changed, l, t, r, b);
+        } finally {
+            DrawerTrace.endSection();
+        }
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+        if(mSnapshot!=null && mContent!=null && mContent.getVisibility()==VISIBLE) {
+            mTmpRect.set(mContent.getLeft(), mContent.getTop(), mContent.getRight(), mContent.getBottom());
+            canvas.drawBitmap(mSnapshot, null, mTmpRect, null);
+        }
+    }
+
+    /**
+     * Draw a persisted picture of the content, stretched over the content area, until the content
+     * inflated in the background is attached
+     * @param snapshot  the picture
+     */
+    void showSnapshot(Bitmap snapshot) {
+        mSnapshot = snapshot;
+        invalidate();
+    }
+
+    /**
+     * Capture the content for a {@link DrawerStateStore}.  The same bitmap is drawn into on every
+     * save, unless the previous one is still being written; opaque content is captured without alpha.
+     * @param scale snapshot size relative to the content
+     * @return the snapshot, to be handed back to {@link #releaseSnapshot(Bitmap)}, or <code>null</code>
+     *          if the content isn't ready or laid out
+     */
+    Bitmap captureSnapshot(float scale) {
+        if(mContent==null || !isContentReady() || mEvictedState!=null || mContent.getWidth()==0 || mContent.getHeight()==0)
+            return null;
+        final int width = Math.max(1, (int) (mContent.getWidth()*scale));
+        final int height = Math.max(1, (int) (mContent.getHeight()*scale));
+        final Bitmap.Config config = isOpaqueContent() ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        Bitmap snapshot;
+        if(mSnapshotBufferBusy.compareAndSet(false, true)) {
+            snapshot = mSnapshotBuffer;
+            if(snapshot!=null && snapshot.getWidth()==width && snapshot.getHeight()==height && snapshot.getConfig()==config) {
+                snapshot.eraseColor(Color.TRANSPARENT);
+            } else {
+                if(snapshot!=null)
+                    snapshot.recycle();
+                snapshot = Bitmap.createBitmap(width, height, config);
+                mSnapshotBuffer = snapshot;
+            }
+        } else {
+            snapshot = Bitmap.createBitmap(width, height, config);
+        }
+        final Canvas canvas = new Canvas(snapshot);
+        canvas.scale(scale, scale);
+        mContent.draw(canvas);
+        return snapshot;
+    }
+
+    /**
+     * Give back a snapshot once it is written.  Called on the background thread.
+     * @param snapshot  a bitmap returned by {@link #captureSnapshot(float)}
+     */
+    void releaseSnapshot(Bitmap snapshot) {
+        if(snapshot==mSnapshotBuffer)
+            mSnapshotBufferBusy.set(false);
+        else
+            snapshot.recycle();
+    }
+
+    /**
+     * Free the snapshot bitmap unless a store is writing it
+     */
+    private void dropSnapshotBuffer() {
+        if(mSnapshotBufferBusy.compareAndSet(false, true)) {
+            if(mSnapshotBuffer!=null)
+                mSnapshotBuffer.recycle();
+            mSnapshotBuffer = null;
+            mSnapshotBufferBusy.set(false);
         }
     }
 
@@ -196,21 +516,121 @@ public class DraggedDrawer extends LinearLayout {
     void setContentVisibility(int visibility) {
         if(mContent==null) return;
         if(visibility==View.GONE && mContent.getVisibility()!=View.GONE) { //adding to layout
-            Log.d(TAG, "Showing content");
-            if(mDrawerType==DRAWER_LEFT)
-                offsetLeftAndRight(-mContent.getWidth());
-            else if(mDrawerType==DRAWER_TOP)
-                offsetTopAndBottom(-mContent.getHeight());
+            if(Log.isLoggable(TAG, Log.DEBUG))
+                Log.d(TAG, "Showing content");
+            mPolicy.offsetPosition(this, -mPolicy.getContentShift(mContent));
         } else if(visibility!=View.GONE && mContent.getVisibility()==View.GONE) {
-            Log.d(TAG, "Hiding content");
-            if(mDrawerType==DRAWER_LEFT)
-                offsetLeftAndRight(mContent.getWidth());
-            else if(mDrawerType==DRAWER_TOP)
-                offsetTopAndBottom(mContent.getHeight());
+            if(Log.isLoggable(TAG, Log.DEBUG))
+                Log.d(TAG, "Hiding content");
+            mPolicy.offsetPosition(this, mPolicy.getContentShift(mContent));
         }
         mContent.setVisibility(visibility);
     }
 
+    /**
+     * Tell content implementing {@link VisibleRectListener} which part of it is inside the
+     * parent's bounds.  Only notifies when the region actually changed.
+     * @param parentWidth   width of the enclosing {@link DragLayout}
+     * @param parentHeight  height of the enclosing {@link DragLayout}
+     */
+    void dispatchVisibleRect(int parentWidth, int parentHeight) {
+        if(!(mContent instanceof VisibleRectListener))
+            return;
+        final int contentLeft = getLeft()+mContent.getLeft();
+        final int contentTop = getTop()+mContent.getTop();
+        if(getContentBounds(mTmpRect) && mTmpRect.intersect(0, 0, parentWidth, parentHeight))
+            mTmpRect.offset(-contentLeft, -contentTop);
+        else
+            mTmpRect.setEmpty();
+        if(!mTmpRect.equals(mVisibleRect)) {
+            mVisibleRect.set(mTmpRect);
+            ((VisibleRectListener)mContent).onVisibleRectChanged(mVisibleRect);
+        }
+    }
+
+    /**
+     * Bounds of the content in the parent's coordinates.
+     * @param out   receives the bounds
+     * @return <code>false</code> if there is no visible content
+     */
+    boolean getContentBounds(Rect out) {
+        if(mContent==null || mContent.getVisibility()!=VISIBLE)
+            return false;
+        final int contentLeft = getLeft()+mContent.getLeft();
+        final int contentTop = getTop()+mContent.getTop();
+        out.set(contentLeft, contentTop, contentLeft+mContent.getWidth(), contentTop+mContent.getHeight());
+        return true;
+    }
+
+    /**
+     * Whether the content completely hides the views behind it.  Fully open opaque drawers
+     * let the {@link DragLayout} skip drawing what they cover.  Unless declared, content is
+     * opaque when it is fully visible and has an opaque background.
+     * @return <code>true</code> if the content is opaque
+     */
+    public boolean isOpaqueContent() {
+        if(mOpaqueContentSet)
+            return mOpaqueContent;
+        if(mContent==null || mContent.getAlpha()<1f)
+            return false;
+        final Drawable background = mContent.getBackground();
+        return background!=null && background.getOpacity()==PixelFormat.OPAQUE;
+    }
+
+    /**
+     * Declare whether the content completely hides the views behind it, i.e. <code>false</code>
+     * for content with an opaque background but translucent children drawn over it, or
+     * <code>true</code> for content which paints every pixel itself.
+     * @param opaque    <code>true</code> if the content is opaque
+     */
+    public void setOpaqueContent(boolean opaque) {
+        mOpaqueContent = opaque;
+        mOpaqueContentSet = true;
+        if(getParent() instanceof View)
+            ((View)getParent()).invalidate();
+    }
+
+    /**
+     * @return <code>true</code> if layout requests are held back while the drawer moves
+     */
+    public boolean isDeferLayout() {
+        return mDeferLayout;
+    }
+
+    /**
+     * Hold back layout requests coming from the content while the drawer is dragging or settling,
+     * i.e. a list loading or an image arriving mid-drag.  Requests are coalesced and issued once
+     * when the drawer comes to rest, so the whole hierarchy isn't laid out again on every change.
+     * @param defer     whether to defer layout requests.  Disabled by default.
+     */
+    public void setDeferLayout(boolean defer) {
+        mDeferLayout = defer;
+        if(!defer)
+            flushDeferredLayout();
+    }
+
+    @Override
+    public void requestLayout() {
+        //requests bubbling up from the content have already flagged it; the drawer's own changes,
+        //i.e. a new size or new content, go through at once
+        if(mDeferLayout && (mState==STATE_DRAGGING || mState==STATE_SETTLING)
+                && !mReplacingContent && mContent!=null && mContent.isLayoutRequested()) {
+            mLayoutDeferred=true;
+            return;
+        }
+        super.requestLayout();
+    }
+
+    /**
+     * Issue a layout request that was held back while the drawer moved
+     */
+    private void flushDeferredLayout() {
+        if(mLayoutDeferred) {
+            mLayoutDeferred=false;
+            super.requestLayout();
+        }
+    }
+
     /**
      * Get the drawer handle
      * @return  drawer handle view or <code>null</code> if no handle
@@ -227,6 +647,314 @@ public class DraggedDrawer extends LinearLayout {
         return mContent;
     }
 
+    /**
+     * Show content pages supplied by an adapter instead of a fixed content view.  The current
+     * content stays until {@link #setContentPage(int)} is called.
+     * @param adapter   the adapter, or <code>null</code>
+     */
+    public void setContentAdapter(DrawerContentAdapter adapter) {
+        releasePrebound();
+        mContentAdapter = adapter;
+        //the current view belongs to the previous adapter's pool
+        mContentPage = -1;
+        if(mEvictedPage!=-1) {
+            mEvictedState = null;
+            mEvictedPage = -1;
+        }
+    }
+
+    public DrawerContentAdapter getContentAdapter() {
+        return mContentAdapter;
+    }
+
+    /**
+     * @return page shown by the content, -1 if the content isn't from the adapter
+     */
+    public int getContentPage() {
+        return mContentPage;
+    }
+
+    /**
+     * Show a page of the content adapter.  A page of the same type as the current one is bound
+     * into the current view; otherwise a pre-bound or pooled view replaces it and the previous
+     * view goes back to the pool.
+     * @param page  the page
+     * @throws IllegalStateException if no adapter is set
+     */
+    public void setContentPage(int page) {
+        if(mContentAdapter==null)
+            throw new IllegalStateException("No content adapter set");
+        mEvictedState = null;
+        mEvictedPage = -1;
+        final int viewType = mContentAdapter.getViewType(page);
+        final View view;
+        if(page==mPreboundPage) {
+            view = mPrebound;
+            mPrebound = null;
+            mPreboundPage = -1;
+        } else if(mContentPage!=-1 && viewType==mContentType) {
+            mContentAdapter.onBindView(mContent, page);
+            mContentPage = page;
+            return;
+        } else {
+            view = mContentAdapter.obtainView(this, page);
+        }
+        final View old = mContent;
+        final int oldPage = mContentPage;
+        final int oldType = mContentType;
+        replaceContent(view);
+        mContentPage = page;
+        mContentType = viewType;
+        if(oldPage!=-1)
+            mContentAdapter.recycleView(old, oldType);
+    }
+
+    /**
+     * Put a view in place of the content, keeping its layout params and visibility
+     */
+    private void replaceContent(View view) {
+        final View old = mContent;
+        final ViewGroup.LayoutParams params = old.getLayoutParams();
+        final int index = indexOfChild(old);
+        view.setVisibility(old.getVisibility());
+        mReplacingContent = true;
+        try {
+            removeViewAt(index);
+            addView(view, index, params);
+        } finally {
+            mReplacingContent = false;
+        }
+        mContent = view;
+        mContentPage = -1;
+        mVisibleRect.setEmpty();
+    }
+
+    /**
+     * Inflate the real content on a background thread once the UI thread is idle after the drawer
+     * is attached.  Until then the content view acts as a lightweight placeholder, and requests to
+     * open the drawer are held back until the content is attached.
+     * <p>
+     * The layout is inflated with the drawer's context and theme but without the activity's
+     * inflater factories, which may not be called off the main thread.  It must not contain
+     * <code>&lt;fragment&gt;</code> tags, and views which a factory would substitute, i.e. the
+     * AppCompat widgets, are inflated as the plain framework views.
+     * @param layoutRes     the content layout, 0 for none
+     */
+    public void setAsyncContentLayout(int layoutRes) {
+        mAsyncContentLayout = layoutRes;
+        mAsyncState = layoutRes!=0 ? ASYNC_WAITING : ASYNC_NONE;
+        if(layoutRes!=0 && getWindowToken()!=null)
+            Looper.myQueue().addIdleHandler(mStartInflation);
+    }
+
+    /**
+     * @return <code>false</code> while content is being inflated in the background
+     */
+    public boolean isContentReady() {
+        return mAsyncState==ASYNC_NONE || mAsyncState==ASYNC_DONE;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if(mAsyncState==ASYNC_WAITING)
+            Looper.myQueue().addIdleHandler(mStartInflation);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        Looper.myQueue().removeIdleHandler(mStartInflation);
+        super.onDetachedFromWindow();
+    }
+
+    static synchronized Handler getBackgroundHandler() {
+        if(sInflateHandler==null) {
+            final HandlerThread thread = new HandlerThread("DrawerInflater", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            sInflateHandler = new Handler(thread.getLooper());
+        }
+        return sInflateHandler;
+    }
+
+    private void startInflation() {
+        if(mAsyncState!=ASYNC_WAITING)
+            return;
+        mAsyncState = ASYNC_INFLATING;
+        final LayoutInflater inflater = getAsyncInflater();
+        final int layout = mAsyncContentLayout;
+        final int inflation = ++mInflation;
+        getBackgroundHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                View content = null;
+                try {
+                    content = inflater.inflate(layout, null);
+                } catch(RuntimeException e) {
+                    Log.e(TAG, "Failed to inflate drawer content", e);
+                }
+                final View result = content;
+                //View.post() drops the result while the drawer is detached
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(inflation==mInflation)
+                            onContentInflated(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return an inflater for {@link #mAsyncContentLayout}
+     */
+    private LayoutInflater getAsyncInflater() {
+        //the application's inflater carries no factories, the clone keeps the drawer's theme
+        return LayoutInflater.from(getContext().getApplicationContext()).cloneInContext(getContext());
+    }
+
+    /**
+     * Attach the content inflated in the background in one step, then carry out a queued open
+     */
+    private void onContentInflated(View content) {
+        mAsyncState = ASYNC_DONE;
+        if(content!=null && mContent!=null) {
+            replaceContent(content);
+            if(mEvictedState!=null)
+                content.restoreHierarchyState(mEvictedState);
+        }
+        mEvictedState = null;
+        if(mSnapshot!=null) {
+            //the live content replaces the picture from the next frame on
+            mSnapshot = null;
+            invalidate();
+        }
+        if(mOpenQueued) {
+            mOpenQueued=false;
+            if(getParent() instanceof DragLayout)
+                ((DragLayout)getParent()).openDrawer(this);
+        }
+    }
+
+    /**
+     * Hold back an open request until the content is ready, starting inflation right away if
+     * it is still waiting for the UI thread to go idle
+     * @return <code>true</code> if the request was queued
+     */
+    boolean queueOpenUntilContentReady() {
+        if(isContentReady())
+            return false;
+        mOpenQueued=true;
+        Looper.myQueue().removeIdleHandler(mStartInflation);
+        startInflation();
+        return true;
+    }
+
+    /**
+     * Forget an open request held back by {@link #queueOpenUntilContentReady()}
+     */
+    void cancelQueuedOpen() {
+        mOpenQueued=false;
+    }
+
+    /**
+     * Bind the page that will be shown next while the drawer is closed, so that
+     * {@link #setContentPage(int)} only has to attach it.
+     * @param page  the page
+     * @return <code>true</code> if the page was bound; <code>false</code> if there is no adapter,
+     * the drawer is not closed, or the page is already shown or bound
+     */
+    public boolean prebindContentPage(int page) {
+        if(mContentAdapter==null || page==mContentPage || page==mPreboundPage)
+            return false;
+        if(mState!=STATE_IDLE || mContent==null || mContent.getVisibility()==VISIBLE)
+            return false;
+        releasePrebound();
+        mPrebound = mContentAdapter.obtainView(this, page);
+        mPreboundPage = page;
+        mPreboundType = mContentAdapter.getViewType(page);
+        //measure at the size it will be shown at, while nothing is moving
+        if(mContent.getWidth()>0 && mContent.getHeight()>0) {
+            mPrebound.measure(MeasureSpec.makeMeasureSpec(mContent.getWidth(), MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(mContent.getHeight(), MeasureSpec.EXACTLY));
+        }
+        return true;
+    }
+
+    private void releasePrebound() {
+        if(mPrebound!=null) {
+            mContentAdapter.recycleView(mPrebound, mPreboundType);
+            mPrebound = null;
+            mPreboundPage = -1;
+        }
+    }
+
+    /**
+     * Free the content of a closed, idle drawer, keeping only its view state.  Only content
+     * which can be recreated is evicted: an adapter page, or an {@link #setAsyncContentLayout(int) async layout}.
+     * @return <code>true</code> if the content was evicted
+     */
+    boolean evictContent() {
+        if(mEvictedState!=null || mContent==null || mState!=STATE_IDLE || mContent.getVisibility()==VISIBLE)
+            return false;
+        final boolean fromAdapter = mContentAdapter!=null && mContentPage!=-1;
+        if(!fromAdapter && (mAsyncContentLayout==0 || mAsyncState!=ASYNC_DONE))
+            return false;
+        final SparseArray<Parcelable> state = new SparseArray<Parcelable>();
+        mContent.saveHierarchyState(state);
+        final int page = mContentPage;
+        //pooled views would keep the memory we are freeing
+        mPrebound = null;
+        mPreboundPage = -1;
+        dropSnapshotBuffer();
+        replaceContent(new View(getContext()));
+        mEvictedState = state;
+        mEvictedPage = fromAdapter ? page : -1;
+        if(!fromAdapter)
+            mAsyncState = ASYNC_WAITING;
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if the content was evicted and not restored yet
+     */
+    public boolean isContentEvicted() {
+        return mEvictedState!=null;
+    }
+
+    /**
+     * Recreate evicted content and restore its view state, on the UI thread, since the drawer is
+     * being captured or opened.  An {@link #setAsyncContentLayout(int) async layout} is inflated
+     * with the same factory-less inflater as in the background; an inflation started in the
+     * meantime is superseded.
+     */
+    void restoreContent() {
+        if(mEvictedState==null)
+            return;
+        if(mEvictedPage!=-1) {
+            final int page = mEvictedPage;
+            final View view = mContentAdapter.obtainView(this, page);
+            replaceContent(view);
+            mContentPage = page;
+            mContentType = mContentAdapter.getViewType(page);
+            view.restoreHierarchyState(mEvictedState);
+            mEvictedState = null;
+            mEvictedPage = -1;
+        } else {
+            Looper.myQueue().removeIdleHandler(mStartInflation);
+            mInflation++;
+            //the caller moves or opens the drawer itself
+            mOpenQueued = false;
+            View content = null;
+            try {
+                content = getAsyncInflater().inflate(mAsyncContentLayout, null);
+            } catch(RuntimeException e) {
+                Log.e(TAG, "Failed to inflate drawer content", e);
+            }
+            onContentInflated(content);
+        }
+    }
+
     /**
      * Handle view size. Zero if no handle.
      * @return size of handle (width for horizontal drawers, height for vertical drawers)
@@ -262,32 +990,56 @@ public class DraggedDrawer extends LinearLayout {
 
     public void setDrawerState(int drawerState) {
         mState=drawerState;
+        if(drawerState==STATE_IDLE)
+            flushDeferredLayout();
+    }
+
+    /**
+     * Set the motion used to settle this drawer after release and when it is opened or closed
+     * programmatically.
+     * @param model settle model, or <code>null</code> to use {@link DragLayout#getSettleModel()}
+     */
+    public void setSettleModel(SettleModel model) {
+        mSettleModel = model;
+    }
+
+    public SettleModel getSettleModel() {
+        return mSettleModel;
     }
 
     public boolean isEdgeDraggable() {
         return mEdgeDraggable;
     }
 
+    /**
+     * @param edgeDraggable whether the drawer can be dragged open from the edge of the layout
+     */
+    public void setEdgeDraggable(boolean edgeDraggable) {
+        mEdgeDraggable = edgeDraggable;
+    }
+
     public boolean isHandleHit(int x, int y) {
-        Rect handleHit = new Rect();
-        mHandle.getHitRect(handleHit);
-        Point point = mapPoint(this, new Point(x, y));
-        return handleHit.contains(point.x, point.y);
+        mHandle.getHitRect(mHandleHit);
+        mapPoint(this, x, y, mHitPoint);
+        return mHandleHit.contains(mHitPoint.x, mHitPoint.y);
     }
 
-    private static Point mapPoint(View view, Point point) {
-        Point mapped = new Point(point.x, point.y);
+    /**
+     * Map a point in the parent's coordinates into this view's.
+     * Writes into <code>mapped</code> and scratch fields so hit testing doesn't allocate.
+     */
+    private void mapPoint(View view, int x, int y, Point mapped) {
+        mapped.set(x, y);
         Matrix matrix = view.getMatrix();
         if(!matrix.isIdentity()) {
-            Matrix inverse = new Matrix();
-            matrix.invert(inverse);
-            float []n = { point.x, point.y };
-            matrix.mapPoints(n);
-            mapped.x= (int) n[0];
-            mapped.y= (int) n[1];
+            matrix.invert(mInverse);
+            mMapPoints[0] = x;
+            mMapPoints[1] = y;
+            matrix.mapPoints(mMapPoints);
+            mapped.x= (int) mMapPoints[0];
+            mapped.y= (int) mMapPoints[1];
         }
         mapped.offset(-view.getLeft(), -view.getTop());
-        return mapped;
     }
 
 }
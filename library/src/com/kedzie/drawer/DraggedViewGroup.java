@@ -95,6 +95,8 @@ public class DraggedViewGroup extends ViewGroup {
     /** Drawer orientation */
     @ViewDebug.ExportedProperty(category = "layout")
     private int mDrawerType;
+    /** Orientation specific math for {@link #mDrawerType} */
+    private OrientationPolicy mPolicy = OrientationPolicy.LEFT;
 
     /** Drag from edge enabled? */
     @ViewDebug.ExportedProperty(category = "layout")
@@ -118,8 +120,18 @@ public class DraggedViewGroup extends ViewGroup {
     /** Current state i.e. {@link DraggedDrawer#STATE_DRAGGING} {@link DraggedDrawer#STATE_IDLE} */
     int mState;
 
+    /** Scratch objects for hit testing the handle */
+    private final Rect mHandleHit = new Rect();
+    private final Point mHitPoint = new Point();
+    private final Matrix mInverse = new Matrix();
+    private final float[] mMapPoints = new float[2];
+
     private boolean mInLayout;
 
+    /** Trace section names, built once per id so tracing doesn't allocate */
+    private String mTraceMeasure;
+    private String mTraceLayout;
+
     public DraggedViewGroup(Context context, AttributeSet attrs) {
         super(context, attrs);
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.Drawer, 0, 0);
@@ -132,6 +144,8 @@ public class DraggedViewGroup extends ViewGroup {
         } finally {
             a.recycle();
         }
+        mPolicy = OrientationPolicy.forType(mDrawerType);
+        buildTraceSections();
     }
 
     /**
@@ -139,6 +153,18 @@ public class DraggedViewGroup extends ViewGroup {
      */
     public DraggedViewGroup(Context context) {
         super(context);
+        buildTraceSections();
+    }
+
+    @Override
+    public void setId(int id) {
+        super.setId(id);
+        buildTraceSections();
+    }
+
+    private void buildTraceSections() {
+        mTraceMeasure = DrawerTrace.sectionName(this, TAG, "onMeasure");
+        mTraceLayout = DrawerTrace.sectionName(this, TAG, "onLayout");
     }
 
     @Override
@@ -150,42 +176,29 @@ public class DraggedViewGroup extends ViewGroup {
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        int widthSpecMode = MeasureSpec.getMode(widthMeasureSpec);
-        int widthSpecSize = MeasureSpec.getSize(widthMeasureSpec);
-        int heightSpecMode = MeasureSpec.getMode(heightMeasureSpec);
-        int heightSpecSize = MeasureSpec.getSize(heightMeasureSpec);
-
-        if(mHandle!=null) {
-            measureChild(mHandle, widthMeasureSpec, heightMeasureSpec);
-            mHandleWidth = mHandle.getMeasuredWidth();
-            mHandleHeight = mHandle.getMeasuredHeight();
-            mHandleSize = (mDrawerType==DRAWER_LEFT || mDrawerType==DRAWER_RIGHT) ?
-                    mHandleWidth : mHandleHeight;
-        }
+        DrawerTrace.beginSection(mTraceMeasure);
+        try {
+            if(mHandle!=null) {
+                measureChild(mHandle, widthMeasureSpec, heightMeasureSpec);
+                mHandleWidth = mHandle.getMeasuredWidth();
+                mHandleHeight = mHandle.getMeasuredHeight();
+                mHandleSize = mPolicy.getMeasuredSize(mHandle);
+            }
 
-        int dw = getPaddingLeft() + getPaddingRight();
-        int dh = getPaddingTop() + getPaddingBottom();
-
-        if(mContent!=null) {
-        switch(mDrawerType) {
-            case DRAWER_BOTTOM:
-            case DRAWER_TOP:
-                measureChild(mContent, widthMeasureSpec,
-                        MeasureSpec.makeMeasureSpec(heightSpecSize-mHandleHeight, heightSpecMode));
-                dw += Math.max(mHandleWidth, mContent.getMeasuredWidth());
-                dh += mHandleHeight+mContent.getMeasuredHeight();
-                break;
-            case DRAWER_LEFT:
-            case DRAWER_RIGHT:
-                measureChild(mContent, MeasureSpec.makeMeasureSpec(widthSpecSize-mHandleWidth, widthSpecMode),
-                        heightMeasureSpec);
-                dw += mHandleWidth+mContent.getMeasuredWidth();
-                dh += Math.max(mHandleHeight, mContent.getMeasuredHeight());
-                break;
-        }
-        }
+            int dw = getPaddingLeft() + getPaddingRight();
+            int dh = getPaddingTop() + getPaddingBottom();
 
-        setMeasuredDimension(resolveSize(dw, widthMeasureSpec), resolveSize(dh, heightMeasureSpec));
+            if(mContent!=null) {
+                measureChild(mContent, mPolicy.getContentWidthSpec(widthMeasureSpec, mHandleWidth),
+                        mPolicy.getContentHeightSpec(heightMeasureSpec, mHandleHeight));
+                dw += mPolicy.getMeasuredWidth(mContent.getMeasuredWidth(), mHandleWidth);
+                dh += mPolicy.getMeasuredHeight(mContent.getMeasuredHeight(), mHandleHeight);
+            }
+
+            setMeasuredDimension(resolveSize(dw, widthMeasureSpec), resolveSize(dh, heightMeasureSpec));
+        } finally {
+            DrawerTrace.endSection();
+        }
     }
 
     @Override
@@ -196,66 +209,21 @@ public class DraggedViewGroup extends ViewGroup {
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        DrawerTrace.beginSection(mTraceLayout);
         mInLayout=true;
-
-        int handleTop=0, handleLeft=0;
-        if(mHandle!=null) {
-            LayoutParams lp = (LayoutParams)mHandle.getLayoutParams();
-            if(mDrawerType==DRAWER_LEFT || mDrawerType==DRAWER_RIGHT) { //horizontal drawers
-                switch(lp.gravity) {
-                    case Gravity.TOP:
-                        handleTop = lp.topMargin;
-                        break;
-                    case Gravity.BOTTOM:
-                        handleTop = mContent.getMeasuredHeight()-mHandleHeight-lp.bottomMargin;
-                        break;
-                    case Gravity.CENTER_HORIZONTAL:
-                    case Gravity.CENTER:
-                    default:
-                        handleTop = (mContent.getMeasuredHeight()-mHandleHeight)/2;
-                        break;
-                }
-            } else {    //vertical drawers
-                switch(lp.gravity) {
-                    case Gravity.LEFT:
-                        handleLeft = lp.leftMargin;
-                        break;
-                    case Gravity.RIGHT:
-                        handleLeft = mContent.getMeasuredWidth()-mHandleWidth-lp.rightMargin;
-                        break;
-                    case Gravity.CENTER_VERTICAL:
-                    case Gravity.CENTER:
-                    default:
-                        handleLeft = (mContent.getMeasuredWidth()-mHandleWidth)/2;
-                        break;
+        try {
+            if(mContent!=null) {
+                int handleCross=0;
+                if(mHandle!=null) {
+                    final LayoutParams lp = (LayoutParams)mHandle.getLayoutParams();
+                    handleCross = mPolicy.getHandleCrossPosition(lp.gravity, lp, mContent, mHandleWidth, mHandleHeight);
                 }
+                mPolicy.layout(mContent, mHandle, handleCross, mHandleWidth, mHandleHeight);
             }
+        } finally {
+            mInLayout=false;
+            DrawerTrace.endSection();
         }
-        if(mContent!=null) {
-            switch(mDrawerType) {
-                case DRAWER_LEFT:
-                    mContent.layout(0, 0, mContent.getMeasuredWidth(), mContent.getMeasuredHeight());
-                    if(mHandle!=null)
-                        mHandle.layout(mContent.getMeasuredWidth(), handleTop, mContent.getMeasuredWidth()+mHandleWidth, handleTop+mHandleHeight);
-                    break;
-                case DRAWER_RIGHT:
-                    if(mHandle!=null)
-                        mHandle.layout(0, handleTop, mHandleWidth, handleTop+mHandleHeight);
-                    mContent.layout(mHandleWidth, 0, mHandleWidth+mContent.getMeasuredWidth(), mContent.getMeasuredHeight());
-                    break;
-                case DRAWER_TOP:
-                    mContent.layout(0, 0, mContent.getMeasuredWidth(), mContent.getMeasuredHeight());
-                    if(mHandle!=null)
-                        mHandle.layout(handleLeft, mContent.getMeasuredHeight(), handleLeft+mHandleWidth,mContent.getMeasuredHeight()+mHandleHeight);
-                    break;
-                case DRAWER_BOTTOM:
-                    if(mHandle!=null)
-                        mHandle.layout(handleLeft, 0, handleLeft+mHandleWidth, mHandleHeight);
-                    mContent.layout(0, mHandleHeight, mContent.getMeasuredWidth(), mHandleHeight+mContent.getMeasuredHeight());
-                    break;
-            }
-        }
-        mInLayout=false;
     }
 
     /**
@@ -283,17 +251,13 @@ public class DraggedViewGroup extends ViewGroup {
      */
     void setContentVisibility(int visibility) {
         if(visibility==View.GONE && mContent.getVisibility()!=View.GONE) { //adding to layout
-            Log.d(TAG, "Showing content");
-            if(mDrawerType==DRAWER_LEFT)
-                offsetLeftAndRight(-mContent.getWidth());
-            else if(mDrawerType==DRAWER_TOP)
-                offsetTopAndBottom(-mContent.getHeight());
+            if(Log.isLoggable(TAG, Log.DEBUG))
+                Log.d(TAG, "Showing content");
+            mPolicy.offsetPosition(this, -mPolicy.getContentShift(mContent));
         } else if(visibility!=View.GONE && mContent.getVisibility()==View.GONE) {
-            Log.d(TAG, "Hiding content");
-            if(mDrawerType==DRAWER_LEFT)
-                offsetLeftAndRight(mContent.getWidth());
-            else if(mDrawerType==DRAWER_TOP)
-                offsetTopAndBottom(mContent.getHeight());
+            if(Log.isLoggable(TAG, Log.DEBUG))
+                Log.d(TAG, "Hiding content");
+            mPolicy.offsetPosition(this, mPolicy.getContentShift(mContent));
         }
         mContent.setVisibility(visibility);
     }
@@ -348,25 +312,27 @@ public class DraggedViewGroup extends ViewGroup {
     }
 
     boolean isHandleHit(int x, int y) {
-        Rect handleHit = new Rect();
-        mHandle.getHitRect(handleHit);
-        Point point = mapPoint(this, new Point(x, y));
-        return handleHit.contains(point.x, point.y);
+        mHandle.getHitRect(mHandleHit);
+        mapPoint(this, x, y, mHitPoint);
+        return mHandleHit.contains(mHitPoint.x, mHitPoint.y);
     }
 
-    private static Point mapPoint(View view, Point point) {
-        Point mapped = new Point(point.x, point.y);
+    /**
+     * Map a point in the parent's coordinates into this view's.
+     * Writes into <code>mapped</code> and scratch fields so hit testing doesn't allocate.
+     */
+    private void mapPoint(View view, int x, int y, Point mapped) {
+        mapped.set(x, y);
         Matrix matrix = view.getMatrix();
         if(!matrix.isIdentity()) {
-            Matrix inverse = new Matrix();
-            matrix.invert(inverse);
-            float []n = { point.x, point.y };
-            matrix.mapPoints(n);
-            mapped.x= (int) n[0];
-            mapped.y= (int) n[1];
+            matrix.invert(mInverse);
+            mMapPoints[0] = x;
+            mMapPoints[1] = y;
+            matrix.mapPoints(mMapPoints);
+            mapped.x= (int) mMapPoints[0];
+            mapped.y= (int) mMapPoints[1];
         }
         mapped.offset(-view.getLeft(), -view.getTop());
-        return mapped;
     }
 
     @Override
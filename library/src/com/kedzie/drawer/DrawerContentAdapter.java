@@ -0,0 +1,115 @@
+package com.kedzie.drawer;
+
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * Supplies the content of a {@link DraggedDrawer} as pages of typed views.  Views which are
+ * swapped out are kept in a pool by view type, so switching what a drawer shows costs a bind
+ * rather than an inflation.
+ * <pre>
+ * drawer.setContentAdapter(adapter);
+ * drawer.setContentPage(PAGE_FILTERS);
+ * drawer.prebindContentPage(PAGE_CART);
+ * </pre>
+ *
+ * @see DraggedDrawer#setContentAdapter(DrawerContentAdapter)
+ */
+public abstract class DrawerContentAdapter {
+
+    /** Views kept per type when none is set */
+    private static final int DEFAULT_MAX_RECYCLED = 2;
+
+    private final SparseArray<ArrayList<View>> mScrap = new SparseArray<ArrayList<View>>();
+    private int mMaxRecycled = DEFAULT_MAX_RECYCLED;
+
+    /**
+     * @return number of pages
+     */
+    public abstract int getCount();
+
+    /**
+     * Pages of the same type can show each other's views
+     * @param page  the page
+     * @return view type of the page, 0 by default
+     */
+    public int getViewType(int page) {
+        return 0;
+    }
+
+    /**
+     * Create a view for a type of page
+     * @param parent    the drawer the view will be added to
+     * @param viewType  type returned by {@link #getViewType(int)}
+     * @return a new view, not yet attached
+     */
+    public abstract View onCreateView(ViewGroup parent, int viewType);
+
+    /**
+     * Show a page in a view created for its type
+     * @param view  a new or recycled view of the page's type
+     * @param page  the page
+     */
+    public abstract void onBindView(View view, int page);
+
+    /**
+     * Called when a view is put in the pool, i.e. to release images it shows
+     * @param view      the view
+     * @param viewType  its type
+     */
+    public void onRecycleView(View view, int viewType) {
+    }
+
+    /**
+     * Limit the views kept in the pool for each type
+     * @param max   views kept per type
+     */
+    public void setMaxRecycledViews(int max) {
+        mMaxRecycled = max;
+        for(int i=0; i<mScrap.size(); i++) {
+            final ArrayList<View> scrap = mScrap.valueAt(i);
+            while(scrap.size()>max)
+                scrap.remove(scrap.size()-1);
+        }
+    }
+
+    /**
+     * Take a view of a type from the pool or create one, and bind a page to it
+     * @param parent    the drawer
+     * @param page      the page
+     * @return the bound view
+     */
+    View obtainView(ViewGroup parent, int page) {
+        final int viewType = getViewType(page);
+        final ArrayList<View> scrap = mScrap.get(viewType);
+        final View view = scrap!=null && !scrap.isEmpty() ? scrap.remove(scrap.size()-1) : onCreateView(parent, viewType);
+        onBindView(view, page);
+        return view;
+    }
+
+    /**
+     * Return a view which is no longer shown to the pool
+     * @param view      the view, detached from its parent
+     * @param viewType  its type
+     */
+    void recycleView(View view, int viewType) {
+        onRecycleView(view, viewType);
+        ArrayList<View> scrap = mScrap.get(viewType);
+        if(scrap==null) {
+            scrap = new ArrayList<View>(mMaxRecycled);
+            mScrap.put(viewType, scrap);
+        }
+        if(scrap.size()<mMaxRecycled)
+            scrap.add(view);
+    }
+
+    /**
+     * Drop all pooled views
+     */
+    public void clearRecycledViews() {
+        mScrap.clear();
+    }
+}
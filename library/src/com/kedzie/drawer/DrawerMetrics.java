@@ -0,0 +1,160 @@
+package com.kedzie.drawer;
+
+/**
+ * Counters describing the work a {@link DragLayout} has done since it was created or its
+ * metrics were last reset.  The layout updates its counters in place without allocating;
+ * {@link DragLayout#getMetrics()} hands out copies.
+ *
+ * @see DragLayout#getMetrics(DrawerMetrics)
+ * @see DragLayout#setMetricsSink(DragLayout.MetricsSink, long)
+ */
+public class DrawerMetrics {
+
+    int interceptedEvents;
+    int passedThroughEvents;
+    int rejectedEvents;
+    long interceptTime;
+    int touchEvents;
+    long touchTime;
+    int measurePasses;
+    int layoutPasses;
+    int suppressedLayoutRequests;
+    int settlesStarted;
+    int settlesInterrupted;
+    int slideCallbacks;
+
+    public DrawerMetrics() {}
+
+    public DrawerMetrics(DrawerMetrics source) {
+        set(source);
+    }
+
+    /**
+     * Copy all counters
+     * @param source    metrics to copy
+     */
+    public void set(DrawerMetrics source) {
+        interceptedEvents = source.interceptedEvents;
+        passedThroughEvents = source.passedThroughEvents;
+        rejectedEvents = source.rejectedEvents;
+        interceptTime = source.interceptTime;
+        touchEvents = source.touchEvents;
+        touchTime = source.touchTime;
+        measurePasses = source.measurePasses;
+        layoutPasses = source.layoutPasses;
+        suppressedLayoutRequests = source.suppressedLayoutRequests;
+        settlesStarted = source.settlesStarted;
+        settlesInterrupted = source.settlesInterrupted;
+        slideCallbacks = source.slideCallbacks;
+    }
+
+    /**
+     * Zero all counters
+     */
+    public void reset() {
+        interceptedEvents = 0;
+        passedThroughEvents = 0;
+        rejectedEvents = 0;
+        interceptTime = 0;
+        touchEvents = 0;
+        touchTime = 0;
+        measurePasses = 0;
+        layoutPasses = 0;
+        suppressedLayoutRequests = 0;
+        settlesStarted = 0;
+        settlesInterrupted = 0;
+        slideCallbacks = 0;
+    }
+
+    /**
+     * @return events for which <code>onInterceptTouchEvent</code> took over the gesture
+     */
+    public int getInterceptedEvents() {
+        return interceptedEvents;
+    }
+
+    /**
+     * @return events which <code>onInterceptTouchEvent</code> let through to the children
+     */
+    public int getPassedThroughEvents() {
+        return passedThroughEvents;
+    }
+
+    /**
+     * @return passed through events which skipped the drag helpers because their gesture
+     * started away from any drawer, handle or edge.  Included in {@link #getPassedThroughEvents()}
+     */
+    public int getRejectedEvents() {
+        return rejectedEvents;
+    }
+
+    /**
+     * @return time spent in <code>onInterceptTouchEvent</code>, in ns
+     */
+    public long getInterceptTime() {
+        return interceptTime;
+    }
+
+    /**
+     * @return events handled by <code>onTouchEvent</code>
+     */
+    public int getTouchEvents() {
+        return touchEvents;
+    }
+
+    /**
+     * @return time spent in <code>onTouchEvent</code>, in ns
+     */
+    public long getTouchTime() {
+        return touchTime;
+    }
+
+    public int getMeasurePasses() {
+        return measurePasses;
+    }
+
+    public int getLayoutPasses() {
+        return layoutPasses;
+    }
+
+    /**
+     * @return <code>requestLayout</code> calls ignored because they came from within the layout's own layout pass
+     */
+    public int getSuppressedLayoutRequests() {
+        return suppressedLayoutRequests;
+    }
+
+    public int getSettlesStarted() {
+        return settlesStarted;
+    }
+
+    /**
+     * @return settles stopped or replaced before reaching their target
+     */
+    public int getSettlesInterrupted() {
+        return settlesInterrupted;
+    }
+
+    /**
+     * @return slide events dispatched to listeners
+     */
+    public int getSlideCallbacks() {
+        return slideCallbacks;
+    }
+
+    @Override
+    public String toString() {
+        return "DrawerMetrics{intercepted=" + interceptedEvents +
+                ", passedThrough=" + passedThroughEvents +
+                ", rejected=" + rejectedEvents +
+                ", interceptTimeNs=" + interceptTime +
+                ", touchEvents=" + touchEvents +
+                ", touchTimeNs=" + touchTime +
+                ", measurePasses=" + measurePasses +
+                ", layoutPasses=" + layoutPasses +
+                ", suppressedLayoutRequests=" + suppressedLayoutRequests +
+                ", settlesStarted=" + settlesStarted +
+                ", settlesInterrupted=" + settlesInterrupted +
+                ", slideCallbacks=" + slideCallbacks + "}";
+    }
+}
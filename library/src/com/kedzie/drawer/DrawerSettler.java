@@ -0,0 +1,109 @@
+package com.kedzie.drawer;
+
+import android.support.v4.widget.ViewDragHelper;
+
+/**
+ * Moves one drawer along its drag axis to a target position following a {@link SettleModel}.
+ * Position changes are reported to the drawer's {@link ViewDragHelper.Callback} just like
+ * the moves made by {@link ViewDragHelper}.  The {@link DragLayout} steps the settle every frame.
+ */
+class DrawerSettler {
+
+    private final DraggedDrawer mDrawer;
+    private final ViewDragHelper.Callback mCallback;
+    private final OrientationPolicy mPolicy;
+    private final boolean mHorizontal;
+
+    private SettleModel mModel;
+    private boolean mRunning;
+    private int mTarget;
+    private float mDistance;
+    private float mVelocity;
+    private long mStartTime;
+    /** Output of {@link SettleModel#compute(float, float, long, float[])} */
+    private final float[] mMotion = new float[2];
+
+    DrawerSettler(DraggedDrawer drawer, ViewDragHelper.Callback callback) {
+        mDrawer = drawer;
+        mCallback = callback;
+        mPolicy = drawer.mPolicy;
+        mHorizontal = mPolicy.isHorizontal();
+    }
+
+    /**
+     * Start settling from the current position
+     * @param model     the motion to follow
+     * @param target    target left (horizontal drawers) or top (vertical drawers)
+     * @param velocity  current velocity along the drag axis, in pixels/ms
+     * @param now       current animation time, in ms
+     * @return <code>true</code> if the drawer has to move
+     */
+    boolean start(SettleModel model, int target, float velocity, long now) {
+        cancel();
+        mModel = model;
+        mTarget = target;
+        mDistance = getPosition()-target;
+        mVelocity = velocity;
+        mStartTime = now;
+        mRunning = mDistance!=0;
+        return mRunning;
+    }
+
+    /**
+     * Move the drawer to its position at a given time
+     * @param now   current animation time, in ms
+     * @return <code>true</code> if the settle is still running afterwards
+     */
+    boolean step(long now) {
+        if(!mRunning)
+            return false;
+        final boolean finished = mModel.compute(mDistance, mVelocity, Math.max(0, now-mStartTime), mMotion);
+        moveTo(finished ? mTarget : mTarget+Math.round(mMotion[0]));
+        mRunning = !finished;
+        return mRunning;
+    }
+
+    /**
+     * Stop where the drawer is
+     */
+    void cancel() {
+        mRunning=false;
+    }
+
+    boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Velocity of the settle in progress, to continue the motion when it is retargeted
+     * @param now   current animation time, in ms
+     * @return velocity along the drag axis in pixels/ms, 0 when not settling
+     */
+    float getVelocity(long now) {
+        if(!isRunning())
+            return 0;
+        mModel.compute(mDistance, mVelocity, Math.max(0, now-mStartTime), mMotion);
+        return mMotion[1];
+    }
+
+    DraggedDrawer getDrawer() {
+        return mDrawer;
+    }
+
+    int getTarget() {
+        return mTarget;
+    }
+
+    private int getPosition() {
+        return mPolicy.getPosition(mDrawer);
+    }
+
+    private void moveTo(int position) {
+        final int delta = position-getPosition();
+        if(delta==0)
+            return;
+        mPolicy.offsetPosition(mDrawer, delta);
+        mCallback.onViewPositionChanged(mDrawer, mDrawer.getLeft(), mDrawer.getTop(),
+                mHorizontal ? delta : 0, mHorizontal ? 0 : delta);
+    }
+}
@@ -0,0 +1,260 @@
+package com.kedzie.drawer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persists the offset and state of a {@link DragLayout}'s drawers, plus a compressed snapshot of
+ * the open drawer's content, to app-private storage.  After process death the layout restores
+ * drawers at their position without animating, and shows the snapshot in place of content which
+ * is still being {@link DraggedDrawer#setAsyncContentLayout(int) inflated in the background}.
+ * <pre>
+ * layout.setStateStore(new DrawerStateStore(context, "main"));
+ * </pre>
+ * Reads and writes happen on a background thread.  The file is read through a memory mapping
+ * as soon as the store is installed, so the layout should be given the store early, i.e. right
+ * after inflating it.  The snapshot is only decoded if its drawer's content isn't ready yet.
+ *
+ * @see DragLayout#setStateStore(DrawerStateStore)
+ */
+public class DrawerStateStore {
+    private static final String TAG = "DrawerStateStore";
+
+    /** File magic, "DDWS" */
+    static final int MAGIC = 0x44445753;
+    static final int VERSION = 1;
+    /** Bytes persisted per drawer */
+    private static final int DRAWER_RECORD_SIZE = 9;
+
+    /** Snapshot scale used when none is set */
+    private static final float DEFAULT_SNAPSHOT_SCALE = 0.5f;
+    private static final int SNAPSHOT_QUALITY = 80;
+
+    private final File mFile;
+    private float mSnapshotScale = DEFAULT_SNAPSHOT_SCALE;
+
+    /** State read by {@link #load()} */
+    private int[] mIds = new int[0];
+    private float[] mOffsets = new float[0];
+    private int[] mStates = new int[0];
+    private int mSnapshotDrawer = FlightRecorder.NO_DRAWER;
+    /** Compressed snapshot, until it is taken or dropped */
+    private byte[] mSnapshot;
+
+    /**
+     * @param context   context whose private files directory holds the state
+     * @param name      name distinguishing layouts of the same application
+     */
+    public DrawerStateStore(Context context, String name) {
+        this(new File(context.getFilesDir(), "drawer-" + name + ".state"));
+    }
+
+    /**
+     * @param file  file holding the state
+     */
+    public DrawerStateStore(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Scale content snapshots down to save memory and storage.  The snapshot is stretched back
+     * to the content size when shown.
+     * @param scale snapshot size relative to the content, 0 to skip snapshots.  0.5 by default.
+     */
+    public void setSnapshotScale(float scale) {
+        if(scale<0 || scale>1)
+            throw new IllegalArgumentException("Snapshot scale must be between 0 and 1: " + scale);
+        mSnapshotScale = scale;
+    }
+
+    public float getSnapshotScale() {
+        return mSnapshotScale;
+    }
+
+    /**
+     * Read the persisted state.  A missing or unreadable file leaves the store empty.  Called on
+     * the background thread; the UI thread reads the result once it is handed over.
+     * @return <code>true</code> if state was read
+     */
+    synchronized boolean load() {
+        if(!mFile.exists())
+            return false;
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mFile, "r");
+            final FileChannel channel = file.getChannel();
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt()!=MAGIC || buffer.getShort()!=VERSION)
+                return false;
+            final int count = buffer.getInt();
+            //each drawer takes an id, an offset and a state byte; a corrupt count must not allocate
+            if(count<0 || count>buffer.remaining()/DRAWER_RECORD_SIZE)
+                return false;
+            final int[] ids = new int[count];
+            final float[] offsets = new float[count];
+            final int[] states = new int[count];
+            for(int i=0; i<count; i++) {
+                ids[i] = buffer.getInt();
+                offsets[i] = buffer.getFloat();
+                states[i] = buffer.get();
+            }
+            final int snapshotDrawer = buffer.getInt();
+            byte[] snapshot = null;
+            if(snapshotDrawer!=FlightRecorder.NO_DRAWER) {
+                final int length = buffer.getInt();
+                if(length<0 || length>buffer.remaining())
+                    return false;
+                snapshot = new byte[length];
+                buffer.get(snapshot);
+            }
+            mIds = ids;
+            mOffsets = offsets;
+            mStates = states;
+            mSnapshotDrawer = snapshot!=null ? snapshotDrawer : FlightRecorder.NO_DRAWER;
+            mSnapshot = snapshot;
+            return true;
+        } catch(IOException e) {
+            Log.w(TAG, "Failed to read drawer state from " + mFile, e);
+        } catch(BufferUnderflowException e) {
+            Log.w(TAG, "Truncated drawer state in " + mFile, e);
+        } finally {
+            if(file!=null) {
+                try {
+                    file.close();
+                } catch(IOException e) {
+                    //read only
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param drawerId  drawer id
+     * @return index of the drawer's persisted state, or -1
+     */
+    int indexOf(int drawerId) {
+        for(int i=0; i<mIds.length; i++)
+            if(mIds[i]==drawerId)
+                return i;
+        return -1;
+    }
+
+    float getOffset(int index) {
+        return mOffsets[index];
+    }
+
+    int getState(int index) {
+        return mStates[index];
+    }
+
+    /**
+     * Hand over the compressed snapshot of a drawer's content, which the store no longer keeps
+     * @param drawerId  drawer id
+     * @return the snapshot, or <code>null</code> if none was persisted for the drawer
+     */
+    byte[] takeSnapshot(int drawerId) {
+        if(drawerId!=mSnapshotDrawer)
+            return null;
+        final byte[] snapshot = mSnapshot;
+        dropSnapshot();
+        return snapshot;
+    }
+
+    /**
+     * Forget the snapshot, once the drawers it could be shown for are placed
+     */
+    void dropSnapshot() {
+        mSnapshot = null;
+        mSnapshotDrawer = FlightRecorder.NO_DRAWER;
+    }
+
+    /**
+     * Write drawer state on a background thread.  The file is replaced atomically and synced to
+     * storage before, so a process killed or a device losing power mid-write leaves the previous state.
+     * @param ids               drawer ids
+     * @param offsets           drawer offsets
+     * @param states            drawer states
+     * @param snapshotDrawer    the drawer the snapshot shows, <code>null</code> if there is no snapshot
+     * @param snapshot          content snapshot, handed back to {@link DraggedDrawer#releaseSnapshot(Bitmap)} once written
+     */
+    void save(final int[] ids, final float[] offsets, final int[] states, final DraggedDrawer snapshotDrawer, final Bitmap snapshot) {
+        final int snapshotId = snapshot!=null ? snapshotDrawer.getId() : FlightRecorder.NO_DRAWER;
+        DraggedDrawer.getBackgroundHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                write(ids, offsets, states, snapshotId, snapshot);
+                if(snapshot!=null)
+                    snapshotDrawer.releaseSnapshot(snapshot);
+            }
+        });
+    }
+
+    private synchronized void write(int[] ids, float[] offsets, int[] states, int snapshotDrawer, Bitmap snapshot) {
+        final File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            final FileOutputStream file = new FileOutputStream(tmp);
+            out = new DataOutputStream(new BufferedOutputStream(file));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(ids.length);
+            for(int i=0; i<ids.length; i++) {
+                out.writeInt(ids[i]);
+                out.writeFloat(offsets[i]);
+                out.writeByte(states[i]);
+            }
+            out.writeInt(snapshotDrawer);
+            if(snapshot!=null) {
+                final ByteArrayOutputStream data = new ByteArrayOutputStream();
+                snapshot.compress(Bitmap.CompressFormat.WEBP, SNAPSHOT_QUALITY, data);
+                out.writeInt(data.size());
+                data.writeTo(out);
+            }
+            out.flush();
+            //the rename must not reach storage before the data
+            file.getFD().sync();
+            out.close();
+            out = null;
+            if(!tmp.renameTo(mFile))
+                Log.w(TAG, "Failed to replace drawer state " + mFile);
+        } catch(IOException e) {
+            Log.w(TAG, "Failed to write drawer state to " + mFile, e);
+        } finally {
+            if(out!=null) {
+                try {
+                    out.close();
+                } catch(IOException e) {
+                    //already failed
+                }
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Delete the persisted state, i.e. when the user signs out
+     */
+    public void clear() {
+        DraggedDrawer.getBackgroundHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized(DrawerStateStore.this) {
+                    mFile.delete();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,307 @@
+package com.kedzie.drawer;
+
+import android.content.res.Resources;
+import android.os.Build;
+import android.os.SystemClock;
+import android.view.View;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Named trace sections emitted by the drawer classes around measure, layout, drawing,
+ * touch dispatch and listener dispatch.  Sections go to the platform's system trace by default,
+ * so they show up in systrace captures next to the framework's own sections.
+ * <pre>
+ * DrawerTrace.MemoryTracer tracer = new DrawerTrace.MemoryTracer(1024);
+ * DrawerTrace.setTracer(tracer);
+ * </pre>
+ */
+public final class DrawerTrace {
+
+    /**
+     * Receives trace sections.  Sections nest and are always ended on the thread which began them.
+     */
+    public interface Tracer {
+
+        /**
+         * @param name  section name, at most 127 characters
+         */
+        public void beginSection(String name);
+
+        /**
+         * End the most recently begun section
+         */
+        public void endSection();
+    }
+
+    /**
+     * Writes sections to <code>android.os.Trace</code>, available from API 18.
+     * Does nothing on older platforms.  Whether tracing is enabled is read at most once per
+     * frame interval, so sections cost no reflective calls while nobody captures a trace.
+     */
+    public static class PlatformTracer implements Tracer {
+        private static final Object[] NO_ARGS = new Object[0];
+        /** <code>Trace.TRACE_TAG_APP</code>, the tag <code>Trace.beginSection</code> writes under */
+        private static final long TRACE_TAG_APP = 1L << 12;
+        /** Deepest nesting passed on to the platform, one bit of {@link #mTraced} per level */
+        private static final int MAX_DEPTH = 64;
+        /** Time the enabled state is reused, in ms */
+        private static final long RECHECK_INTERVAL = 16;
+
+        private Method mBeginSection;
+        private Method mEndSection;
+        private Method mIsTagEnabled;
+        /** Reused argument arrays, sections are only traced from the UI thread */
+        private final Object[] mArgs = new Object[1];
+        private final Object[] mTagArgs = new Object[] { TRACE_TAG_APP };
+
+        private boolean mEnabled;
+        private long mCheckedAt = Long.MIN_VALUE;
+        /** Nesting depth, and which of the open sections were passed on to the platform */
+        private int mDepth;
+        private long mTraced;
+
+        public PlatformTracer() {
+            if(Build.VERSION.SDK_INT < 18)
+                return;
+            try {
+                final Class<?> trace = Class.forName("android.os.Trace");
+                mBeginSection = trace.getMethod("beginSection", String.class);
+                mEndSection = trace.getMethod("endSection");
+            } catch(Exception e) {
+                mBeginSection = null;
+                mEndSection = null;
+                return;
+            }
+            try {
+                mIsTagEnabled = Class.forName("android.os.Trace").getMethod("isTagEnabled", long.class);
+            } catch(Exception e) {
+                //hidden on some releases, trace unconditionally
+                mIsTagEnabled = null;
+            }
+        }
+
+        private boolean isEnabled() {
+            if(mIsTagEnabled==null)
+                return true;
+            final long now = SystemClock.uptimeMillis();
+            if(now-mCheckedAt >= RECHECK_INTERVAL) {
+                mCheckedAt = now;
+                try {
+                    mEnabled = (Boolean) mIsTagEnabled.invoke(null, mTagArgs);
+                } catch(Exception e) {
+                    mIsTagEnabled = null;
+                    mEnabled = true;
+                }
+            }
+            return mEnabled;
+        }
+
+        @Override
+        public void beginSection(String name) {
+            final int depth = mDepth++;
+            //sections nested too deep to be recorded as traced are never ended, so never begin them
+            if(depth>=MAX_DEPTH || mBeginSection==null || !isEnabled())
+                return;
+            mArgs[0] = name;
+            try {
+                mBeginSection.invoke(null, mArgs);
+                mTraced |= 1L << depth;
+            } catch(Exception e) {
+                mBeginSection = null;
+            }
+        }
+
+        @Override
+        public void endSection() {
+            if(mDepth==0)
+                return;
+            final int depth = --mDepth;
+            //only end sections which began while tracing was enabled
+            if(depth>=MAX_DEPTH || (mTraced & 1L << depth)==0)
+                return;
+            mTraced &= ~(1L << depth);
+            if(mEndSection==null)
+                return;
+            try {
+                mEndSection.invoke(null, NO_ARGS);
+            } catch(Exception e) {
+                mEndSection = null;
+            }
+        }
+    }
+
+    /**
+     * Keeps completed sections in memory, i.e. for tests.  Storage is preallocated;
+     * sections past the capacity are counted but not kept.
+     */
+    public static class MemoryTracer implements Tracer {
+        private final String[] mNames;
+        private final long[] mStarts;
+        private final long[] mDurations;
+        private final int[] mDepths;
+        private int mCount;
+        private int mDropped;
+        /** Indices of open sections, -1 for dropped ones */
+        private int[] mOpen = new int[16];
+        private int mDepth;
+
+        /**
+         * @param capacity  number of sections kept
+         */
+        public MemoryTracer(int capacity) {
+            mNames = new String[capacity];
+            mStarts = new long[capacity];
+            mDurations = new long[capacity];
+            mDepths = new int[capacity];
+        }
+
+        @Override
+        public void beginSection(String name) {
+            if(mDepth==mOpen.length)
+                mOpen = Arrays.copyOf(mOpen, mDepth*2);
+            if(mCount==mNames.length) {
+                mDropped++;
+                mOpen[mDepth++] = -1;
+                return;
+            }
+            mNames[mCount] = name;
+            mStarts[mCount] = System.nanoTime();
+            mDurations[mCount] = -1;
+            mDepths[mCount] = mDepth;
+            mOpen[mDepth++] = mCount++;
+        }
+
+        @Override
+        public void endSection() {
+            if(mDepth==0)
+                return;
+            final int index = mOpen[--mDepth];
+            if(index>=0)
+                mDurations[index] = System.nanoTime()-mStarts[index];
+        }
+
+        /**
+         * @return number of sections kept, in the order they began
+         */
+        public int getSectionCount() {
+            return mCount;
+        }
+
+        /**
+         * @return number of sections not kept because the tracer was full
+         */
+        public int getDroppedCount() {
+            return mDropped;
+        }
+
+        public String getName(int section) {
+            return mNames[section];
+        }
+
+        /**
+         * @return nesting depth of a section, 0 for outermost sections
+         */
+        public int getDepth(int section) {
+            return mDepths[section];
+        }
+
+        /**
+         * @return start time of a section, from {@link System#nanoTime()}
+         */
+        public long getStartTime(int section) {
+            return mStarts[section];
+        }
+
+        /**
+         * @return duration of a section in ns, or -1 if it has not ended
+         */
+        public long getDuration(int section) {
+            return mDurations[section];
+        }
+
+        /**
+         * @param name  section name
+         * @return number of kept sections with a name
+         */
+        public int getCount(String name) {
+            int count=0;
+            for(int i=0; i<mCount; i++)
+                if(mNames[i].equals(name))
+                    count++;
+            return count;
+        }
+
+        /**
+         * @param name  section name
+         * @return total duration of the ended sections with a name, in ns
+         */
+        public long getTotalDuration(String name) {
+            long total=0;
+            for(int i=0; i<mCount; i++)
+                if(mDurations[i]>=0 && mNames[i].equals(name))
+                    total+=mDurations[i];
+            return total;
+        }
+
+        /**
+         * Forget all sections
+         */
+        public void clear() {
+            Arrays.fill(mNames, 0, mCount, null);
+            mCount=0;
+            mDropped=0;
+            mDepth=0;
+        }
+    }
+
+    private static volatile Tracer sTracer = new PlatformTracer();
+
+    private DrawerTrace() {}
+
+    /**
+     * Replace the tracer receiving sections from all drawer classes
+     * @param tracer    the tracer, or <code>null</code> to disable tracing
+     */
+    public static void setTracer(Tracer tracer) {
+        sTracer = tracer;
+    }
+
+    public static Tracer getTracer() {
+        return sTracer;
+    }
+
+    /**
+     * Build a section name identifying a view by its resource id, i.e. <code>DraggedDrawer:left#onMeasure</code>.
+     * Meant to be called once per view so tracing itself doesn't allocate.
+     * @param view      the view
+     * @param prefix    name of the view's class
+     * @param section   name of the traced method
+     * @return the section name
+     */
+    static String sectionName(View view, String prefix, String section) {
+        String name = prefix;
+        if(view.getId()!=View.NO_ID) {
+            try {
+                name = prefix + ":" + view.getResources().getResourceEntryName(view.getId());
+            } catch(Resources.NotFoundException e) {
+                name = prefix + ":" + view.getId();
+            }
+        }
+        name = name + "#" + section;
+        return name.length()>127 ? name.substring(name.length()-127) : name;
+    }
+
+    static void beginSection(String name) {
+        final Tracer tracer = sTracer;
+        if(tracer!=null)
+            tracer.beginSection(name);
+    }
+
+    static void endSection() {
+        final Tracer tracer = sTracer;
+        if(tracer!=null)
+            tracer.endSection();
+    }
+}
@@ -0,0 +1,211 @@
+package com.kedzie.drawer;
+
+import android.os.SystemClock;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+
+/**
+ * Fixed-size ring buffer of recent drawer events kept by a {@link DragLayout} so bug reports
+ * can carry the last moments of drawer history.  Storage is preallocated and recording does
+ * not allocate; the oldest events are overwritten once the buffer is full.
+ * <pre>
+ * layout.setFlightRecorder(new FlightRecorder(256));
+ * ...
+ * layout.getFlightRecorder().dump(new PrintWriter(System.err, true));
+ * </pre>
+ */
+public class FlightRecorder {
+
+    /** Binary dump magic, "DDFR" */
+    static final int MAGIC = 0x44444652;
+    static final int VERSION = 1;
+
+    /** Drawer changed state, <code>arg</code> is the new drawer state and <code>a</code> the layout state */
+    public static final int EVENT_STATE = 0;
+    /** Drawer was captured for dragging, <code>arg</code> is the pointer id and <code>a</code> the slide offset */
+    public static final int EVENT_CAPTURE = 1;
+    /** Drawer was released, <code>a</code>/<code>b</code> are the x/y velocity in pixels/second */
+    public static final int EVENT_RELEASE = 2;
+    /** {@link DragLayout#openDrawer(DraggedDrawer)} was called, <code>a</code> is the slide offset */
+    public static final int EVENT_OPEN = 3;
+    /** {@link DragLayout#closeDrawer(DraggedDrawer)} was called, <code>a</code> is the slide offset */
+    public static final int EVENT_CLOSE = 4;
+    /** Layout decided whether to intercept, <code>arg</code> is the action, <code>a</code> is 1 if intercepted */
+    public static final int EVENT_INTERCEPT = 5;
+
+    private static final String[] EVENT_NAMES = { "STATE", "CAPTURE", "RELEASE", "OPEN", "CLOSE", "INTERCEPT" };
+
+    /** Drawer id used for events not tied to a drawer */
+    public static final int NO_DRAWER = -1;
+
+    private final byte[] mTypes;
+    private final long[] mTimes;
+    private final int[] mDrawers;
+    private final int[] mArgs;
+    private final float[] mA;
+    private final float[] mB;
+
+    /** Index the next event is written to */
+    private int mHead;
+    /** Number of valid events, at most the capacity */
+    private int mSize;
+    private long mTotal;
+
+    /**
+     * @param capacity  maximum number of events retained
+     */
+    public FlightRecorder(int capacity) {
+        if(capacity<=0)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        mTypes = new byte[capacity];
+        mTimes = new long[capacity];
+        mDrawers = new int[capacity];
+        mArgs = new int[capacity];
+        mA = new float[capacity];
+        mB = new float[capacity];
+    }
+
+    /**
+     * Append an event, overwriting the oldest one if the buffer is full
+     * @param type      one of the <code>EVENT_*</code> constants
+     * @param drawer    id of the drawer, or {@link #NO_DRAWER}
+     * @param arg       integer argument
+     * @param a         first float argument
+     * @param b         second float argument
+     */
+    public synchronized void record(int type, int drawer, int arg, float a, float b) {
+        mTypes[mHead] = (byte) type;
+        mTimes[mHead] = SystemClock.uptimeMillis();
+        mDrawers[mHead] = drawer;
+        mArgs[mHead] = arg;
+        mA[mHead] = a;
+        mB[mHead] = b;
+        mHead = (mHead+1) % mTypes.length;
+        if(mSize<mTypes.length)
+            mSize++;
+        mTotal++;
+    }
+
+    /**
+     * @return maximum number of events retained
+     */
+    public int getCapacity() {
+        return mTypes.length;
+    }
+
+    /**
+     * @return number of events currently retained
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return number of events recorded since creation or the last {@link #clear()}, including overwritten ones
+     */
+    public synchronized long getTotalCount() {
+        return mTotal;
+    }
+
+    /**
+     * Drop all recorded events
+     */
+    public synchronized void clear() {
+        mHead=0;
+        mSize=0;
+        mTotal=0;
+    }
+
+    /**
+     * Index of the i'th oldest retained event
+     */
+    private int index(int i) {
+        return (mHead - mSize + i + mTypes.length) % mTypes.length;
+    }
+
+    /**
+     * Write the retained events, oldest first, as human readable text
+     * @param pw    the writer
+     */
+    public synchronized void dump(PrintWriter pw) {
+        pw.print("FlightRecorder: ");
+        pw.print(mSize);
+        pw.print(" of ");
+        pw.print(mTotal);
+        pw.println(" events");
+        final long now = SystemClock.uptimeMillis();
+        for(int i=0; i<mSize; i++) {
+            final int idx = index(i);
+            final int type = mTypes[idx];
+            pw.print("  -");
+            pw.print(now - mTimes[idx]);
+            pw.print("ms ");
+            pw.print(type>=0 && type<EVENT_NAMES.length ? EVENT_NAMES[type] : String.valueOf(type));
+            if(mDrawers[idx]!=NO_DRAWER) {
+                pw.print(" drawer=0x");
+                pw.print(Integer.toHexString(mDrawers[idx]));
+            }
+            switch(type) {
+                case EVENT_STATE:
+                    pw.print(" state=");
+                    pw.print(mArgs[idx]);
+                    pw.print(" layoutState=");
+                    pw.print((int) mA[idx]);
+                    break;
+                case EVENT_CAPTURE:
+                    pw.print(" pointer=");
+                    pw.print(mArgs[idx]);
+                    pw.print(" offset=");
+                    pw.print(mA[idx]);
+                    break;
+                case EVENT_RELEASE:
+                    pw.print(" xvel=");
+                    pw.print(mA[idx]);
+                    pw.print(" yvel=");
+                    pw.print(mB[idx]);
+                    break;
+                case EVENT_OPEN:
+                case EVENT_CLOSE:
+                    pw.print(" offset=");
+                    pw.print(mA[idx]);
+                    break;
+                case EVENT_INTERCEPT:
+                    pw.print(" action=");
+                    pw.print(mArgs[idx]);
+                    pw.print(" intercept=");
+                    pw.print(mA[idx]!=0f);
+                    break;
+            }
+            pw.println();
+        }
+        pw.flush();
+    }
+
+    /**
+     * Write the retained events, oldest first, in a compact binary form
+     * @param out   the stream, which is flushed but not closed
+     * @throws IOException on write error
+     */
+    public synchronized void writeTo(OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeLong(SystemClock.uptimeMillis());
+        data.writeLong(mTotal);
+        data.writeInt(mSize);
+        for(int i=0; i<mSize; i++) {
+            final int idx = index(i);
+            data.writeByte(mTypes[idx]);
+            data.writeLong(mTimes[idx]);
+            data.writeInt(mDrawers[idx]);
+            data.writeInt(mArgs[idx]);
+            data.writeFloat(mA[idx]);
+            data.writeFloat(mB[idx]);
+        }
+        data.flush();
+    }
+}
@@ -0,0 +1,41 @@
+package com.kedzie.drawer;
+
+/**
+ * Source of time and animation frames for a {@link DragLayout}.  The default follows the
+ * display's vsync; tests can install a {@link ManualFrameSource} to step frames deterministically.
+ *
+ * @see DragLayout#setFrameSource(FrameSource)
+ */
+public interface FrameSource {
+
+    /**
+     * Receives animation frames
+     */
+    public interface Callback {
+
+        /**
+         * Called once per frame it was posted for
+         * @param frameTime time of the frame in ms, on the same time base as {@link FrameSource#now()}
+         */
+        public void doFrame(long frameTime);
+    }
+
+    /**
+     * Current time
+     * @return time in ms
+     */
+    public long now();
+
+    /**
+     * Run a callback once, on the next frame.  Posting a callback which is already
+     * pending has no effect.
+     * @param callback  the callback
+     */
+    public void postFrameCallback(Callback callback);
+
+    /**
+     * Remove a pending callback
+     * @param callback  the callback
+     */
+    public void removeFrameCallback(Callback callback);
+}
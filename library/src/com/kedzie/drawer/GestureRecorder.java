@@ -0,0 +1,201 @@
+package com.kedzie.drawer;
+
+import android.util.Log;
+import android.view.MotionEvent;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Records the touch events a {@link DragLayout} receives into a compact binary trace, which
+ * can be fed back to a layout later, i.e. to turn gestures captured on a device into
+ * reproducible performance tests.
+ * <pre>
+ * GestureRecorder recorder = new GestureRecorder(new FileOutputStream(traceFile));
+ * layout.setGestureRecorder(recorder);
+ * ...
+ * layout.setGestureRecorder(null);
+ * recorder.close();
+ * </pre>
+ * Events are encoded into a memory buffer on the touch path; full buffers are written to the
+ * stream on a background thread.
+ */
+public class GestureRecorder {
+    private static final String TAG = "GestureRecorder";
+
+    /** Trace file magic, "DDGT" */
+    static final int MAGIC = 0x44444754;
+    static final int VERSION = 1;
+
+    /** Event was delivered to {@link DragLayout#onInterceptTouchEvent(MotionEvent)} */
+    public static final int TARGET_INTERCEPT = 0;
+    /** Event was delivered to {@link DragLayout#onTouchEvent(MotionEvent)} */
+    public static final int TARGET_TOUCH = 1;
+
+    /** Size of the buffers events are encoded into */
+    private static final int BUFFER_SIZE = 8*1024;
+    /** Encoded size of an event without its pointers and samples */
+    private static final int EVENT_HEADER_SIZE = 1+4+8+4*6+4*2+1+2;
+
+    private final DataOutputStream mOut;
+    private ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /** Buffers which have been written out, guarded by itself */
+    private final ArrayList<ByteBuffer> mFree = new ArrayList<ByteBuffer>();
+    private int mEventCount;
+    /** First write error, reported by {@link #flush()} and {@link #close()} */
+    private volatile IOException mError;
+
+    /**
+     * @param out   stream the trace is written to
+     * @throws IOException if the header cannot be written
+     */
+    public GestureRecorder(OutputStream out) throws IOException {
+        mOut = new DataOutputStream(new BufferedOutputStream(out));
+        mOut.writeInt(MAGIC);
+        mOut.writeShort(VERSION);
+    }
+
+    /**
+     * Append an event to the trace.  After a write error recording stops and the error is logged.
+     * @param ev        the event
+     * @param target    {@link #TARGET_INTERCEPT} or {@link #TARGET_TOUCH}
+     */
+    public void record(MotionEvent ev, int target) {
+        if(mError!=null)
+            return;
+        final long downTime = ev.getDownTime();
+        final int pointerCount = ev.getPointerCount();
+        final int historySize = ev.getHistorySize();
+        final int size = EVENT_HEADER_SIZE + pointerCount*2 + (historySize+1)*(4+pointerCount*16);
+        if(mBuffer.remaining()<size) {
+            handOff();
+            //oversized events get a buffer of their own
+            if(mBuffer.capacity()<size)
+                mBuffer = ByteBuffer.allocate(size);
+        }
+        final ByteBuffer out = mBuffer;
+        out.put((byte) target);
+        out.putInt(ev.getAction());
+        out.putLong(downTime);
+        out.putInt(ev.getMetaState());
+        out.putInt(ev.getButtonState());
+        out.putInt(ev.getEdgeFlags());
+        out.putInt(ev.getSource());
+        out.putInt(ev.getFlags());
+        out.putInt(ev.getDeviceId());
+        out.putFloat(ev.getXPrecision());
+        out.putFloat(ev.getYPrecision());
+        out.put((byte) pointerCount);
+        for(int p=0; p<pointerCount; p++) {
+            out.put((byte) ev.getPointerId(p));
+            out.put((byte) ev.getToolType(p));
+        }
+        out.putShort((short) historySize);
+        for(int h=0; h<historySize; h++) {
+            out.putInt((int) (ev.getHistoricalEventTime(h) - downTime));
+            for(int p=0; p<pointerCount; p++) {
+                out.putFloat(ev.getHistoricalX(p, h));
+                out.putFloat(ev.getHistoricalY(p, h));
+                out.putFloat(ev.getHistoricalPressure(p, h));
+                out.putFloat(ev.getHistoricalSize(p, h));
+            }
+        }
+        out.putInt((int) (ev.getEventTime() - downTime));
+        for(int p=0; p<pointerCount; p++) {
+            out.putFloat(ev.getX(p));
+            out.putFloat(ev.getY(p));
+            out.putFloat(ev.getPressure(p));
+            out.putFloat(ev.getSize(p));
+        }
+        mEventCount++;
+    }
+
+    /**
+     * Queue the current buffer for writing and continue in a free one
+     */
+    private void handOff() {
+        final ByteBuffer full = mBuffer;
+        if(full.position()==0)
+            return;
+        synchronized(mFree) {
+            mBuffer = mFree.isEmpty() ? ByteBuffer.allocate(BUFFER_SIZE) : mFree.remove(mFree.size()-1);
+        }
+        DraggedDrawer.getBackgroundHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                write(full);
+            }
+        });
+    }
+
+    private void write(ByteBuffer buffer) {
+        if(mError==null) {
+            try {
+                mOut.write(buffer.array(), 0, buffer.position());
+            } catch(IOException e) {
+                Log.e(TAG, "Stopped recording after " + mEventCount + " events", e);
+                mError = e;
+            }
+        }
+        buffer.clear();
+        if(buffer.capacity()==BUFFER_SIZE) {
+            synchronized(mFree) {
+                mFree.add(buffer);
+            }
+        }
+    }
+
+    /**
+     * @return number of events recorded
+     */
+    public int getEventCount() {
+        return mEventCount;
+    }
+
+    /**
+     * Write out buffered events, waiting for the background writes to finish
+     * @throws IOException on write error
+     */
+    public void flush() throws IOException {
+        handOff();
+        final CountDownLatch done = new CountDownLatch(1);
+        DraggedDrawer.getBackgroundHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if(mError==null)
+                        mOut.flush();
+                } catch(IOException e) {
+                    mError = e;
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        try {
+            done.await();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing gesture trace");
+        }
+        if(mError!=null)
+            throw mError;
+    }
+
+    /**
+     * Flush and close the underlying stream
+     * @throws IOException on write error
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            mOut.close();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.kedzie.drawer;
+
+/**
+ * Listeners subscribed to a subset of drawer events.  Registration copies the backing array, so
+ * dispatch iterates a stable snapshot without allocating, and listeners may add or remove
+ * listeners while being notified.  Listeners are registered on the UI thread; the snapshot may
+ * be read from the background thread delivering to {@link DraggedDrawer#LISTEN_BACKGROUND} listeners.
+ * <pre>
+ * final ListenerRegistry.Entry&lt;DrawerListener&gt;[] entries = mListeners.entries();
+ * for(int i=0; i&lt;entries.length; i++)
+ *     if(entries[i].accepts(LISTEN_SLIDE))
+ *         entries[i].listener.onDrawerSlide(drawer, offset);
+ * </pre>
+ * @param <L>   listener type
+ */
+final class ListenerRegistry<L> {
+
+    /**
+     * A listener and the events it subscribed to
+     */
+    static final class Entry<L> {
+        final L listener;
+        /** <code>LISTEN_*</code> flags */
+        final int mask;
+
+        Entry(L listener, int mask) {
+            this.listener=listener;
+            this.mask=mask;
+        }
+
+        /**
+         * @return <code>true</code> if the listener is called for the event on the UI thread
+         */
+        boolean accepts(int event) {
+            return (mask & (event | DraggedDrawer.LISTEN_BACKGROUND))==event;
+        }
+
+        /**
+         * @return <code>true</code> if the listener is called for the event in the background
+         */
+        boolean acceptsInBackground(int event) {
+            return (mask & (event | DraggedDrawer.LISTEN_BACKGROUND))==(event | DraggedDrawer.LISTEN_BACKGROUND);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private volatile Entry<L>[] mEntries = empty();
+    /** Union of the UI thread listeners' masks, so events nobody subscribed to are skipped outright */
+    private int mMask;
+    /** Union of the background listeners' masks */
+    private int mBackgroundMask;
+
+    @SuppressWarnings("unchecked")
+    private static <L> Entry<L>[] empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Subscribe a listener, or change the events of one already subscribed
+     * @param listener  the listener
+     * @param mask      <code>LISTEN_*</code> flags
+     */
+    @SuppressWarnings("unchecked")
+    void add(L listener, int mask) {
+        if(listener==null)
+            throw new IllegalArgumentException("Listener cannot be null");
+        final int index = indexOf(listener);
+        final Entry<L>[] entries;
+        if(index==-1) {
+            entries = new Entry[mEntries.length+1];
+            System.arraycopy(mEntries, 0, entries, 0, mEntries.length);
+            entries[mEntries.length] = new Entry<L>(listener, mask);
+        } else {
+            entries = mEntries.clone();
+            entries[index] = new Entry<L>(listener, mask);
+        }
+        update(entries);
+    }
+
+    /**
+     * @param listener  the listener
+     * @return <code>true</code> if the listener was subscribed
+     */
+    @SuppressWarnings("unchecked")
+    boolean remove(L listener) {
+        final int index = indexOf(listener);
+        if(index==-1)
+            return false;
+        if(mEntries.length==1) {
+            update(ListenerRegistry.<L>empty());
+            return true;
+        }
+        final Entry<L>[] entries = new Entry[mEntries.length-1];
+        System.arraycopy(mEntries, 0, entries, 0, index);
+        System.arraycopy(mEntries, index+1, entries, index, entries.length-index);
+        update(entries);
+        return true;
+    }
+
+    private void update(Entry<L>[] entries) {
+        int mask = 0;
+        int backgroundMask = 0;
+        for(int i=0; i<entries.length; i++) {
+            if((entries[i].mask & DraggedDrawer.LISTEN_BACKGROUND)!=0)
+                backgroundMask |= entries[i].mask;
+            else
+                mask |= entries[i].mask;
+        }
+        mEntries = entries;
+        mMask = mask;
+        mBackgroundMask = backgroundMask;
+    }
+
+    private int indexOf(L listener) {
+        for(int i=0; i<mEntries.length; i++)
+            if(mEntries[i].listener==listener)
+                return i;
+        return -1;
+    }
+
+    /**
+     * @param event a <code>LISTEN_*</code> flag
+     * @return <code>true</code> if any UI thread listener subscribed to the event
+     */
+    boolean has(int event) {
+        return (mMask & event)!=0;
+    }
+
+    /**
+     * @param event a <code>LISTEN_*</code> flag
+     * @return <code>true</code> if any background listener subscribed to the event
+     */
+    boolean hasBackground(int event) {
+        return (mBackgroundMask & event)!=0;
+    }
+
+    /**
+     * @return the current subscriptions.  Never modified; do not modify.
+     */
+    Entry<L>[] entries() {
+        return mEntries;
+    }
+}
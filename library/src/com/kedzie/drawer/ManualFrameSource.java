@@ -0,0 +1,118 @@
+package com.kedzie.drawer;
+
+import java.util.ArrayList;
+
+/**
+ * {@link FrameSource} which only produces frames when told to, at a fixed interval.
+ * Makes drawer animations deterministic, i.e. for tests on a JVM without a display:
+ * <pre>
+ * ManualFrameSource frames = new ManualFrameSource(16);
+ * layout.setFrameSource(frames);
+ * layout.openDrawer(drawer);
+ * frames.runUntilIdle(100);
+ * </pre>
+ */
+public class ManualFrameSource implements FrameSource {
+
+    private final ArrayList<Callback> mPending = new ArrayList<Callback>();
+    private final ArrayList<Callback> mRunning = new ArrayList<Callback>();
+
+    private long mFrameInterval;
+    private long mTime;
+    private int mFrameCount;
+
+    /**
+     * @param frameInterval time between frames in ms, i.e. 16 for 60Hz or 8 for 120Hz
+     */
+    public ManualFrameSource(long frameInterval) {
+        mFrameInterval = frameInterval;
+    }
+
+    public void setFrameInterval(long frameInterval) {
+        mFrameInterval = frameInterval;
+    }
+
+    public long getFrameInterval() {
+        return mFrameInterval;
+    }
+
+    @Override
+    public long now() {
+        return mTime;
+    }
+
+    /**
+     * Move the clock without producing a frame
+     * @param millis    time to add, in ms
+     */
+    public void advanceTime(long millis) {
+        mTime += millis;
+    }
+
+    @Override
+    public void postFrameCallback(Callback callback) {
+        if(!mPending.contains(callback))
+            mPending.add(callback);
+    }
+
+    @Override
+    public void removeFrameCallback(Callback callback) {
+        mPending.remove(callback);
+    }
+
+    /**
+     * Advance the clock by one frame interval and run the callbacks posted for it
+     * @return <code>false</code> if no callback was pending
+     */
+    public boolean doFrame() {
+        mTime += mFrameInterval;
+        if(mPending.isEmpty())
+            return false;
+        mFrameCount++;
+        //copied by index, addAll() would allocate an array
+        for(int i=0; i<mPending.size(); i++)
+            mRunning.add(mPending.get(i));
+        mPending.clear();
+        for(int i=0; i<mRunning.size(); i++)
+            mRunning.get(i).doFrame(mTime);
+        mRunning.clear();
+        return true;
+    }
+
+    /**
+     * Produce a number of frames
+     * @param frames    number of frames
+     */
+    public void doFrames(int frames) {
+        for(int i=0; i<frames; i++)
+            doFrame();
+    }
+
+    /**
+     * Produce frames until nothing is waiting for one
+     * @param maxFrames give up after this many frames
+     * @return number of frames produced
+     */
+    public int runUntilIdle(int maxFrames) {
+        int frames=0;
+        while(frames<maxFrames && hasPendingFrame()) {
+            doFrame();
+            frames++;
+        }
+        return frames;
+    }
+
+    /**
+     * @return <code>true</code> if a callback is waiting for the next frame
+     */
+    public boolean hasPendingFrame() {
+        return !mPending.isEmpty();
+    }
+
+    /**
+     * @return number of frames which ran at least one callback
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+}
@@ -0,0 +1,370 @@
+package com.kedzie.drawer;
+
+import android.graphics.drawable.Drawable;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+/**
+ * Orientation specific drag, settle, shadow and layout math for a drawer.  One instance per
+ * drawer type is bound to each drawer when it is registered, so the per-event paths call
+ * through a single object instead of switching on the drawer type.
+ * <p>
+ * The math of the per-event paths, i.e. clamping, offsets and settle targets, is in final
+ * methods driven by coefficients each orientation sets once.  Those calls have a single target
+ * whichever drawers a layout holds, so they stay monomorphic and branch-free when drawers on
+ * several sides share the drag callbacks.  Only layout, measure and shadow math is overridden.
+ * <p>
+ * <em>Position</em> is the left edge of horizontal drawers and the top edge of vertical
+ * drawers; <em>size</em> is the extent along the drag axis, including the handle.
+ */
+abstract class OrientationPolicy {
+
+    static final OrientationPolicy LEFT = new Left();
+    static final OrientationPolicy RIGHT = new Right();
+    static final OrientationPolicy TOP = new Top();
+    static final OrientationPolicy BOTTOM = new Bottom();
+
+    /**
+     * @param drawerType    i.e. {@link DraggedDrawer#DRAWER_LEFT}
+     * @return the policy for the drawer type
+     */
+    static OrientationPolicy forType(int drawerType) {
+        switch(drawerType) {
+            case DraggedDrawer.DRAWER_LEFT:
+                return LEFT;
+            case DraggedDrawer.DRAWER_RIGHT:
+                return RIGHT;
+            case DraggedDrawer.DRAWER_TOP:
+                return TOP;
+            case DraggedDrawer.DRAWER_BOTTOM:
+                return BOTTOM;
+            default:
+                throw new IllegalArgumentException("Unknown drawer type: " + drawerType);
+        }
+    }
+
+    private final boolean mHorizontal;
+    /** 1 along the drag axis, 0 across it */
+    private final int mAlongX;
+    private final int mAlongY;
+    /** 1 for drawers opening from the right or bottom edge, 0 for the left or top edge */
+    private final int mFar;
+    private final int mNear;
+    /** Sign of the velocity which opens the drawer */
+    private final int mOpenDirection;
+
+    /**
+     * @param horizontal    whether the drawer is dragged along the x axis
+     * @param far           whether the drawer opens from the right or bottom edge
+     */
+    OrientationPolicy(boolean horizontal, boolean far) {
+        mHorizontal = horizontal;
+        mAlongX = horizontal ? 1 : 0;
+        mAlongY = 1-mAlongX;
+        mFar = far ? 1 : 0;
+        mNear = 1-mFar;
+        mOpenDirection = far ? -1 : 1;
+    }
+
+    final boolean isHorizontal() {
+        return mHorizontal;
+    }
+
+    final int getPosition(View view) {
+        return view.getLeft()*mAlongX + view.getTop()*mAlongY;
+    }
+
+    final void offsetPosition(View view, int delta) {
+        view.offsetLeftAndRight(delta*mAlongX);
+        view.offsetTopAndBottom(delta*mAlongY);
+    }
+
+    final int getSize(View view) {
+        return view.getWidth()*mAlongX + view.getHeight()*mAlongY;
+    }
+
+    final int getMeasuredSize(View view) {
+        return view.getMeasuredWidth()*mAlongX + view.getMeasuredHeight()*mAlongY;
+    }
+
+    final int getParentSize(int parentWidth, int parentHeight) {
+        return parentWidth*mAlongX + parentHeight*mAlongY;
+    }
+
+    /**
+     * @return the component of a vector along the drag axis
+     */
+    final float getAxisComponent(float x, float y) {
+        return x*mAlongX + y*mAlongY;
+    }
+
+    final int getAxisComponent(int x, int y) {
+        return x*mAlongX + y*mAlongY;
+    }
+
+    final void setAxisTranslation(View view, float translation) {
+        if(mHorizontal)
+            view.setTranslationX(translation);
+        else
+            view.setTranslationY(translation);
+    }
+
+    /**
+     * @return position of the fully open drawer
+     */
+    final int getOpenPosition(int size, int parentSize) {
+        return mFar*(parentSize-size);
+    }
+
+    /**
+     * @return position of the closed drawer, with only its handle showing
+     */
+    final int getClosedPosition(int size, int handleSize, int parentSize) {
+        return mFar*(parentSize-handleSize) + mNear*(handleSize-size);
+    }
+
+    /**
+     * @return position of a drawer with the given slide offset
+     */
+    final int getPositionForOffset(float offset, int size, int handleSize, int parentSize) {
+        return getClosedPosition(size, handleSize, parentSize) + mOpenDirection*Math.round(offset*(size-handleSize));
+    }
+
+    /**
+     * @return slide offset of a drawer at the given position, from 0-1
+     */
+    final float getOffsetForPosition(int position, int size, int handleSize, int parentSize) {
+        return (float) (mOpenDirection*(position-getClosedPosition(size, handleSize, parentSize))) / (size-handleSize);
+    }
+
+    /**
+     * @return sign of the velocity which opens the drawer
+     */
+    final int getOpenDirection() {
+        return mOpenDirection;
+    }
+
+    /**
+     * Distance the drawer moves when its content is shown or hidden, so that its handle stays put
+     */
+    final int getContentShift(View content) {
+        return mNear*getSize(content);
+    }
+
+    /**
+     * Where a released drawer settles: open when flung towards open, or released more than
+     * halfway open without velocity, otherwise closed
+     * @param velocity  velocity along the drag axis
+     * @param offset    slide offset at release
+     */
+    final int getReleaseTarget(float velocity, float offset, int size, int handleSize, int parentSize) {
+        return velocity*getOpenDirection() > 0 || velocity == 0 && offset > .5f
+                ? getOpenPosition(size, parentSize) : getClosedPosition(size, handleSize, parentSize);
+    }
+
+    /**
+     * Place the drop shadow along the edge of the drawer content
+     */
+    abstract void setShadowBounds(Drawable shadow, View drawer, int handleSize);
+
+    /**
+     * @return whether a drawer of this type is dragged starting at the given point
+     */
+    abstract boolean isInEdgeZone(float x, float y, int edgeSize, int left, int top, int right, int bottom);
+
+    /**
+     * @return {@link LinearLayout#HORIZONTAL} or {@link LinearLayout#VERTICAL}
+     */
+    abstract int getLinearOrientation();
+
+    /**
+     * @return whether the handle comes before the content
+     */
+    abstract boolean isHandleLeading();
+
+    abstract int getContentWidthSpec(int widthMeasureSpec, int handleWidth);
+
+    abstract int getContentHeightSpec(int heightMeasureSpec, int handleHeight);
+
+    abstract int getMeasuredWidth(int contentWidth, int handleWidth);
+
+    abstract int getMeasuredHeight(int contentHeight, int handleHeight);
+
+    /**
+     * Offset of the handle across the drag axis according to its gravity
+     */
+    abstract int getHandleCrossPosition(int gravity, ViewGroup.MarginLayoutParams lp, View content, int handleWidth, int handleHeight);
+
+    /**
+     * Lay out content and handle next to each other along the drag axis
+     * @param handle        the handle, may be <code>null</code>
+     * @param handleCross   offset of the handle across the drag axis
+     */
+    abstract void layout(View content, View handle, int handleCross, int handleWidth, int handleHeight);
+
+    private static abstract class Horizontal extends OrientationPolicy {
+        Horizontal(boolean far) {
+            super(true, far);
+        }
+
+        @Override int getLinearOrientation() { return LinearLayout.HORIZONTAL; }
+
+        @Override
+        int getContentWidthSpec(int widthMeasureSpec, int handleWidth) {
+            return View.MeasureSpec.makeMeasureSpec(View.MeasureSpec.getSize(widthMeasureSpec)-handleWidth,
+                    View.MeasureSpec.getMode(widthMeasureSpec));
+        }
+
+        @Override int getContentHeightSpec(int heightMeasureSpec, int handleHeight) { return heightMeasureSpec; }
+        @Override int getMeasuredWidth(int contentWidth, int handleWidth) { return handleWidth+contentWidth; }
+        @Override int getMeasuredHeight(int contentHeight, int handleHeight) { return Math.max(handleHeight, contentHeight); }
+
+        @Override
+        int getHandleCrossPosition(int gravity, ViewGroup.MarginLayoutParams lp, View content, int handleWidth, int handleHeight) {
+            switch(gravity) {
+                case Gravity.TOP:
+                    return lp.topMargin;
+                case Gravity.BOTTOM:
+                    return content.getMeasuredHeight()-handleHeight-lp.bottomMargin;
+                default:
+                    return (content.getMeasuredHeight()-handleHeight)/2;
+            }
+        }
+    }
+
+    private static abstract class Vertical extends OrientationPolicy {
+        Vertical(boolean far) {
+            super(false, far);
+        }
+
+        @Override int getLinearOrientation() { return LinearLayout.VERTICAL; }
+        @Override int getContentWidthSpec(int widthMeasureSpec, int handleWidth) { return widthMeasureSpec; }
+
+        @Override
+        int getContentHeightSpec(int heightMeasureSpec, int handleHeight) {
+            return View.MeasureSpec.makeMeasureSpec(View.MeasureSpec.getSize(heightMeasureSpec)-handleHeight,
+                    View.MeasureSpec.getMode(heightMeasureSpec));
+        }
+
+        @Override int getMeasuredWidth(int contentWidth, int handleWidth) { return Math.max(handleWidth, contentWidth); }
+        @Override int getMeasuredHeight(int contentHeight, int handleHeight) { return handleHeight+contentHeight; }
+
+        @Override
+        int getHandleCrossPosition(int gravity, ViewGroup.MarginLayoutParams lp, View content, int handleWidth, int handleHeight) {
+            switch(gravity) {
+                case Gravity.LEFT:
+                    return lp.leftMargin;
+                case Gravity.RIGHT:
+                    return content.getMeasuredWidth()-handleWidth-lp.rightMargin;
+                default:
+                    return (content.getMeasuredWidth()-handleWidth)/2;
+            }
+        }
+    }
+
+    private static final class Left extends Horizontal {
+        Left() {
+            super(false);
+        }
+
+        @Override boolean isHandleLeading() { return false; }
+
+        @Override
+        void setShadowBounds(Drawable shadow, View drawer, int handleSize) {
+            final int contentRight = drawer.getRight()-handleSize;
+            shadow.setBounds(contentRight, drawer.getTop(), contentRight+shadow.getIntrinsicWidth(), drawer.getBottom());
+        }
+
+        @Override
+        boolean isInEdgeZone(float x, float y, int edgeSize, int left, int top, int right, int bottom) {
+            return x < left+edgeSize;
+        }
+
+        @Override
+        void layout(View content, View handle, int handleCross, int handleWidth, int handleHeight) {
+            content.layout(0, 0, content.getMeasuredWidth(), content.getMeasuredHeight());
+            if(handle!=null)
+                handle.layout(content.getMeasuredWidth(), handleCross, content.getMeasuredWidth()+handleWidth, handleCross+handleHeight);
+        }
+    }
+
+    private static final class Right extends Horizontal {
+        Right() {
+            super(true);
+        }
+
+        @Override boolean isHandleLeading() { return true; }
+
+        @Override
+        void setShadowBounds(Drawable shadow, View drawer, int handleSize) {
+            final int contentLeft = drawer.getLeft()+handleSize;
+            shadow.setBounds(contentLeft-shadow.getIntrinsicWidth(), drawer.getTop(), contentLeft, drawer.getBottom());
+        }
+
+        @Override
+        boolean isInEdgeZone(float x, float y, int edgeSize, int left, int top, int right, int bottom) {
+            return x > right-edgeSize;
+        }
+
+        @Override
+        void layout(View content, View handle, int handleCross, int handleWidth, int handleHeight) {
+            if(handle!=null)
+                handle.layout(0, handleCross, handleWidth, handleCross+handleHeight);
+            content.layout(handleWidth, 0, handleWidth+content.getMeasuredWidth(), content.getMeasuredHeight());
+        }
+    }
+
+    private static final class Top extends Vertical {
+        Top() {
+            super(false);
+        }
+
+        @Override boolean isHandleLeading() { return false; }
+
+        @Override
+        void setShadowBounds(Drawable shadow, View drawer, int handleSize) {
+            final int contentBottom = drawer.getBottom()-handleSize;
+            shadow.setBounds(drawer.getLeft(), contentBottom, drawer.getRight(), contentBottom+shadow.getIntrinsicHeight());
+        }
+
+        @Override
+        boolean isInEdgeZone(float x, float y, int edgeSize, int left, int top, int right, int bottom) {
+            return y < top+edgeSize;
+        }
+
+        @Override
+        void layout(View content, View handle, int handleCross, int handleWidth, int handleHeight) {
+            content.layout(0, 0, content.getMeasuredWidth(), content.getMeasuredHeight());
+            if(handle!=null)
+                handle.layout(handleCross, content.getMeasuredHeight(), handleCross+handleWidth, content.getMeasuredHeight()+handleHeight);
+        }
+    }
+
+    private static final class Bottom extends Vertical {
+        Bottom() {
+            super(true);
+        }
+
+        @Override boolean isHandleLeading() { return true; }
+
+        @Override
+        void setShadowBounds(Drawable shadow, View drawer, int handleSize) {
+            final int contentTop = drawer.getTop()+handleSize;
+            shadow.setBounds(drawer.getLeft(), contentTop-shadow.getIntrinsicHeight(), drawer.getRight(), contentTop);
+        }
+
+        @Override
+        boolean isInEdgeZone(float x, float y, int edgeSize, int left, int top, int right, int bottom) {
+            return y > bottom-edgeSize;
+        }
+
+        @Override
+        void layout(View content, View handle, int handleCross, int handleWidth, int handleHeight) {
+            if(handle!=null)
+                handle.layout(handleCross, 0, handleCross+handleWidth, handleHeight);
+            content.layout(0, handleHeight, content.getMeasuredWidth(), handleHeight+content.getMeasuredHeight());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.kedzie.drawer;
+
+/**
+ * Motion used to settle a drawer at its open or closed position, after it is released
+ * or when it is opened or closed programmatically.  Implementations must be stateless;
+ * the same model can be shared by many drawers.
+ *
+ * @see DragLayout#setSettleModel(SettleModel)
+ * @see DraggedDrawer#setSettleModel(SettleModel)
+ */
+public interface SettleModel {
+
+    /**
+     * Compute the motion at some point of a settle.
+     * @param distance  signed distance of the drawer from its target when the settle started, in pixels
+     * @param velocity  signed velocity of the drawer when the settle started, in pixels/ms
+     * @param elapsed   time since the settle started, in ms
+     * @param out       receives the signed distance from the target in <code>out[0]</code> and the
+     *                  velocity in pixels/ms in <code>out[1]</code>
+     * @return <code>true</code> when the drawer has reached its target
+     */
+    public boolean compute(float distance, float velocity, long elapsed, float[] out);
+
+    /**
+     * Decelerates to the target.  A drawer released with a velocity towards its target
+     * starts at that velocity, so faster flings settle in less time.
+     */
+    public static class Decelerate implements SettleModel {
+        private final float mDefaultVelocity;
+        private final int mMinDuration;
+        private final int mMaxDuration;
+
+        /**
+         * @param defaultVelocity   initial speed used when the drawer is not already moving
+         *                          towards the target, in pixels/ms
+         * @param minDuration       shortest settle, in ms
+         * @param maxDuration       longest settle, in ms
+         */
+        public Decelerate(float defaultVelocity, int minDuration, int maxDuration) {
+            mDefaultVelocity = defaultVelocity;
+            mMinDuration = minDuration;
+            mMaxDuration = maxDuration;
+        }
+
+        @Override
+        public boolean compute(float distance, float velocity, long elapsed, float[] out) {
+            //quadratic ease out starts at twice the average speed
+            final float speed = velocity*distance<0 ? Math.abs(velocity) : mDefaultVelocity;
+            final float duration = Math.max(mMinDuration, Math.min(mMaxDuration, 2*Math.abs(distance)/speed));
+            if(elapsed>=duration) {
+                out[0]=0;
+                out[1]=0;
+                return true;
+            }
+            final float remaining = 1f-elapsed/duration;
+            out[0] = distance*remaining*remaining;
+            out[1] = -2*distance*remaining/duration;
+            return false;
+        }
+    }
+
+    /**
+     * Critically damped spring.  Keeps the velocity of the release and approaches the target
+     * as fast as possible without oscillating.  The settle ends as soon as the target is
+     * reached, so a fling past the target stops there.
+     */
+    public static class Spring implements SettleModel {
+        /** Settled when closer than this, in pixels */
+        private static final float POSITION_THRESHOLD = .5f;
+        /** Settled when slower than this, in pixels/ms */
+        private static final float VELOCITY_THRESHOLD = .01f;
+
+        private final float mFrequency;
+
+        /**
+         * @param frequency natural frequency of the spring, in radians/second.  Higher is stiffer;
+         *                  the settle takes roughly <code>6000/frequency</code> ms from rest.
+         */
+        public Spring(float frequency) {
+            mFrequency = frequency/1000f;
+        }
+
+        @Override
+        public boolean compute(float distance, float velocity, long elapsed, float[] out) {
+            final float w = mFrequency;
+            final float b = velocity + w*distance;
+            final float decay = (float) Math.exp(-w*elapsed);
+            final float offset = (distance + b*elapsed)*decay;
+            final float speed = (b - w*(distance + b*elapsed))*decay;
+            if(offset*distance<=0 || (Math.abs(offset)<POSITION_THRESHOLD && Math.abs(speed)<VELOCITY_THRESHOLD)) {
+                out[0]=0;
+                out[1]=0;
+                return true;
+            }
+            out[0]=offset;
+            out[1]=speed;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.kedzie.drawer;
+
+import android.view.MotionEvent;
+
+/**
+ * Estimates the velocity of a pointer from all the samples batched into each
+ * {@link MotionEvent}, including the historical ones, and extrapolates where
+ * the pointer will be a short time ahead.
+ */
+class TouchPredictor {
+
+    /** Number of samples kept */
+    private static final int HISTORY_SIZE = 16;
+
+    /** Only samples this recent (ms) are used for the velocity estimate */
+    private static final long HORIZON = 40;
+
+    private final float[] mX = new float[HISTORY_SIZE];
+    private final float[] mY = new float[HISTORY_SIZE];
+    private final long[] mTime = new long[HISTORY_SIZE];
+
+    /** Index of the most recent sample */
+    private int mIndex;
+    private int mCount;
+
+    private float mVelocityX;
+    private float mVelocityY;
+
+    /**
+     * Forget all samples
+     */
+    void clear() {
+        mCount=0;
+        mVelocityX=0;
+        mVelocityY=0;
+    }
+
+    /**
+     * Add every sample of a pointer in the event
+     * @param ev        the event
+     * @param pointerId pointer to track
+     */
+    void addMovement(MotionEvent ev, int pointerId) {
+        final int pointerIndex = ev.findPointerIndex(pointerId);
+        if(pointerIndex<0)
+            return;
+        final int historySize = ev.getHistorySize();
+        for(int h=0; h<historySize; h++)
+            addSample(ev.getHistoricalX(pointerIndex, h), ev.getHistoricalY(pointerIndex, h), ev.getHistoricalEventTime(h));
+        addSample(ev.getX(pointerIndex), ev.getY(pointerIndex), ev.getEventTime());
+        computeVelocity();
+    }
+
+    private void addSample(float x, float y, long time) {
+        mIndex = (mIndex+1)%HISTORY_SIZE;
+        mX[mIndex]=x;
+        mY[mIndex]=y;
+        mTime[mIndex]=time;
+        if(mCount<HISTORY_SIZE)
+            mCount++;
+    }
+
+    /**
+     * Least squares slope of the samples within {@link #HORIZON} of the newest one
+     */
+    private void computeVelocity() {
+        final long newest = mTime[mIndex];
+        float sumT=0, sumX=0, sumY=0, sumTT=0, sumTX=0, sumTY=0;
+        int n=0;
+        for(int i=0; i<mCount; i++) {
+            final int index = (mIndex-i+HISTORY_SIZE)%HISTORY_SIZE;
+            final float t = mTime[index]-newest;
+            if(-t>HORIZON)
+                break;
+            sumT+=t;
+            sumX+=mX[index];
+            sumY+=mY[index];
+            sumTT+=t*t;
+            sumTX+=t*mX[index];
+            sumTY+=t*mY[index];
+            n++;
+        }
+        final float denominator = n*sumTT - sumT*sumT;
+        if(n<2 || denominator==0) {
+            mVelocityX=0;
+            mVelocityY=0;
+            return;
+        }
+        mVelocityX = (n*sumTX - sumT*sumX)/denominator;
+        mVelocityY = (n*sumTY - sumT*sumY)/denominator;
+    }
+
+    /**
+     * @return horizontal velocity in pixels per millisecond
+     */
+    float getVelocityX() {
+        return mVelocityX;
+    }
+
+    /**
+     * @return vertical velocity in pixels per millisecond
+     */
+    float getVelocityY() {
+        return mVelocityY;
+    }
+
+    /**
+     * How far the pointer will have moved horizontally after a given time
+     * @param lead  time ahead of the newest sample, in ms
+     * @return predicted horizontal distance
+     */
+    float predictDeltaX(long lead) {
+        return mVelocityX*lead;
+    }
+
+    /**
+     * How far the pointer will have moved vertically after a given time
+     * @param lead  time ahead of the newest sample, in ms
+     * @return predicted vertical distance
+     */
+    float predictDeltaY(long lead) {
+        return mVelocityY*lead;
+    }
+}
@@ -0,0 +1,94 @@
+package com.kedzie.drawer;
+
+import java.lang.reflect.Method;
+
+/**
+ * Reads how many bytes the current thread has allocated, where the runtime keeps count.
+ * Backed by the per-thread counters of <code>com.sun.management.ThreadMXBean</code>,
+ * which desktop JVMs provide (i.e. when running under Robolectric).  Not supported on devices.
+ */
+final class AllocationCounter {
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private static Object sThreadBean;
+    private static Method sCurrentThreadAllocatedBytes;
+    private static Method sThreadAllocatedBytes;
+    /** Bytes allocated by a read of the counter itself */
+    private static long sOverhead;
+
+    static {
+        try {
+            final Object bean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            final Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+            if(beanClass.isInstance(bean)) {
+                try {
+                    sCurrentThreadAllocatedBytes = beanClass.getMethod("getCurrentThreadAllocatedBytes");
+                } catch(NoSuchMethodException e) {
+                    sThreadAllocatedBytes = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+                }
+                sThreadBean = bean;
+                calibrate();
+            }
+        } catch(Exception e) {
+            //not available on this runtime
+            sThreadBean = null;
+        }
+    }
+
+    private AllocationCounter() {}
+
+    private static void calibrate() {
+        long overhead = Long.MAX_VALUE;
+        for(int i=0; i<16; i++) {
+            final long before = read();
+            final long after = read();
+            overhead = Math.min(overhead, after-before);
+        }
+        sOverhead = Math.max(0, overhead);
+    }
+
+    private static long read() {
+        try {
+            if(sCurrentThreadAllocatedBytes!=null)
+                return (Long) sCurrentThreadAllocatedBytes.invoke(sThreadBean, NO_ARGS);
+            return (Long) sThreadAllocatedBytes.invoke(sThreadBean, Thread.currentThread().getId());
+        } catch(Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the runtime counts allocations per thread
+     */
+    public static boolean isSupported() {
+        return sThreadBean!=null;
+    }
+
+    /**
+     * Total bytes allocated by the current thread so far.  Only differences between two
+     * reads are meaningful; subtract {@link #getOverhead()} from them.
+     * @return allocated bytes, or -1 if not supported
+     */
+    public static long getAllocatedBytes() {
+        return sThreadBean!=null ? read() : -1;
+    }
+
+    /**
+     * @return bytes allocated by one call of {@link #getAllocatedBytes()}
+     */
+    public static long getOverhead() {
+        return sOverhead;
+    }
+
+    /**
+     * Bytes allocated since an earlier read, without the allocations of the reads themselves
+     * @param before    earlier result of {@link #getAllocatedBytes()}
+     * @return allocated bytes, or -1 if not supported
+     */
+    public static long getAllocatedSince(long before) {
+        if(sThreadBean==null || before<0)
+            return -1;
+        return Math.max(0, read()-before-sOverhead);
+    }
+}
@@ -0,0 +1,66 @@
+package com.kedzie.drawer;
+
+/**
+ * Times operations for the benchmarks, which run with <code>mvn test -Pbenchmark</code> and
+ * are left out of the regular test run.  An operation runs in rounds: the first rounds let the
+ * JIT compile it and are discarded, then the fastest remaining round is reported, since
+ * interference from the rest of the machine only ever adds time.
+ * <pre>
+ * double nsPerOp = Benchmark.measure("intercept move", 10000, new Benchmark.Operation() {
+ *     public void run(int iterations) {
+ *         for(int i=0; i&lt;iterations; i++)
+ *             layout.onInterceptTouchEvent(move);
+ *     }
+ * });
+ * </pre>
+ */
+final class Benchmark {
+    static final int WARM_UP_ROUNDS = 10;
+    static final int ROUNDS = 10;
+
+    /**
+     * A batch of the operation being measured, looped by the implementation so the call
+     * into it is not part of the measurement
+     */
+    interface Operation {
+        void run(int iterations);
+    }
+
+    /** Results fed here can't be optimized away */
+    private static volatile long sSink;
+
+    private Benchmark() {}
+
+    static void consume(long value) {
+        sSink += value;
+    }
+
+    /**
+     * Measure and print the time an operation takes
+     * @param name          name to print
+     * @param iterations    operations per round
+     * @param operation     the operation
+     * @return ns per operation in the fastest round
+     */
+    static double measure(String name, int iterations, Operation operation) {
+        for(int i=0; i<WARM_UP_ROUNDS; i++)
+            operation.run(iterations);
+        long best = Long.MAX_VALUE;
+        for(int i=0; i<ROUNDS; i++) {
+            final long start = System.nanoTime();
+            operation.run(iterations);
+            best = Math.min(best, System.nanoTime()-start);
+        }
+        final double perOp = (double) best/iterations;
+        System.out.println(String.format("%-48s %10.1f ns/op", name, perOp));
+        return perOp;
+    }
+
+    /**
+     * Print how much faster one measurement is than another
+     */
+    static void printSaving(String name, double baseline, double measured) {
+        System.out.println(String.format("%-48s %10.1f ns/op (%.0f%%)", name, baseline-measured,
+                100*(baseline-measured)/baseline));
+    }
+}
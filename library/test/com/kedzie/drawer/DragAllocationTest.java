@@ -0,0 +1,110 @@
+package com.kedzie.drawer;
+
+import android.view.MotionEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Fails when an event or frame of a drag, fling, settle or tap allocates once the layout is
+ * warmed up.  Each sequence runs once unmeasured, so pools, lazily created helpers and class
+ * initialization are out of the way, then again with every dispatch and frame counted.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk=18)
+public class DragAllocationTest {
+    private static final int WARM_UP_RUNS = 2;
+
+    private DrawerTestHarness mHarness;
+
+    @Before
+    public void setUp() {
+        assumeTrue(AllocationCounter.isSupported());
+        mHarness = new DrawerTestHarness();
+    }
+
+    @Test
+    public void edgeDragAndSettle() {
+        for(int i=0; i<=WARM_UP_RUNS; i++) {
+            final boolean measure = i==WARM_UP_RUNS;
+            dispatch(mHarness.edgeDrag(150, 12), measure, "edge drag");
+            settle(measure, "open");
+            assertEquals(1f, mHarness.getOffset(), 0.01f);
+            dispatch(mHarness.drag(DrawerTestHarness.DRAWER_WIDTH, 20, 12, DrawerTestHarness.EVENT_INTERVAL), measure, "drag closed");
+            settle(measure, "close");
+            assertEquals(0f, mHarness.getOffset(), 0.01f);
+        }
+    }
+
+    @Test
+    public void flingAndSettle() {
+        for(int i=0; i<=WARM_UP_RUNS; i++) {
+            final boolean measure = i==WARM_UP_RUNS;
+            dispatch(mHarness.fling(1, 120, 4), measure, "fling open");
+            settle(measure, "fling open");
+            assertEquals(1f, mHarness.getOffset(), 0.01f);
+            dispatch(mHarness.fling(DrawerTestHarness.DRAWER_WIDTH, 80, 4), measure, "fling closed");
+            settle(measure, "fling closed");
+            assertEquals(0f, mHarness.getOffset(), 0.01f);
+        }
+    }
+
+    @Test
+    public void handleTaps() {
+        for(int i=0; i<=WARM_UP_RUNS; i++) {
+            final boolean measure = i==WARM_UP_RUNS;
+            dispatch(mHarness.tap(mHarness.getHandleX(), DrawerTestHarness.HEIGHT/2), measure, "tap to open");
+            settle(measure, "open");
+            assertEquals(1f, mHarness.getOffset(), 0.01f);
+            //the handle moved with the drawer
+            dispatch(mHarness.tap(DrawerTestHarness.DRAWER_WIDTH+mHarness.getHandleX(), DrawerTestHarness.HEIGHT/2), measure, "tap to close");
+            settle(measure, "close");
+            assertEquals(0f, mHarness.getOffset(), 0.01f);
+        }
+    }
+
+    @Test
+    public void contentScroll() {
+        //a gesture in the middle of the content never reaches the drawer
+        for(int i=0; i<=WARM_UP_RUNS; i++)
+            dispatch(mHarness.drag(DrawerTestHarness.WIDTH/2, DrawerTestHarness.WIDTH/2+100, 12, DrawerTestHarness.EVENT_INTERVAL),
+                    i==WARM_UP_RUNS, "content scroll");
+        assertEquals(0f, mHarness.getOffset(), 0f);
+    }
+
+    private void dispatch(MotionEvent[] events, boolean measure, String sequence) {
+        for(int i=0; i<events.length; i++) {
+            final int action = events[i].getAction();
+            final long before = AllocationCounter.getAllocatedBytes();
+            mHarness.layout.dispatchTouchEvent(events[i]);
+            final long allocated = AllocationCounter.getAllocatedSince(before);
+            events[i].recycle();
+            if(measure)
+                assertEquals(sequence + ": event " + i + " (action " + action + ") allocated", 0, allocated);
+        }
+    }
+
+    private void settle(boolean measure, String sequence) {
+        int frame=0;
+        while(frame<500) {
+            final long before = AllocationCounter.getAllocatedBytes();
+            final boolean ran = mHarness.frames.doFrame();
+            final long allocated = AllocationCounter.getAllocatedSince(before);
+            if(!ran)
+                break;
+            if(measure)
+                assertEquals(sequence + ": frame " + frame + " allocated", 0, allocated);
+            //layout runs outside the measurement; it belongs to the framework
+            mHarness.layout();
+            frame++;
+        }
+        assertTrue(sequence + " did not settle", frame<500);
+        mHarness.layout();
+    }
+}
@@ -0,0 +1,201 @@
+package com.kedzie.drawer;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.robolectric.Robolectric;
+
+import java.util.ArrayList;
+
+/**
+ * A {@link DragLayout} with a left drawer, laid out in an activity and driven by a
+ * {@link ManualFrameSource}, plus builders for the gestures the tests send it.
+ * Events are obtained up front, so measuring their dispatch only counts the layout's own work.
+ * <pre>
+ * DrawerTestHarness harness = new DrawerTestHarness();
+ * harness.dispatch(harness.edgeDrag(120, 6));
+ * harness.settle();
+ * </pre>
+ */
+class DrawerTestHarness {
+    static final int WIDTH = 480;
+    static final int HEIGHT = 800;
+    static final int DRAWER_WIDTH = 200;
+    static final int HANDLE_WIDTH = 24;
+    /** Time between the events of a gesture, in ms */
+    static final int EVENT_INTERVAL = 16;
+
+    /**
+     * A view which counts how often, and how many pixels, it draws
+     */
+    static class CountingView extends View {
+        int draws;
+        long drawnPixels;
+
+        CountingView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            draws++;
+            drawnPixels += (long) getWidth()*getHeight();
+        }
+
+        void reset() {
+            draws=0;
+            drawnPixels=0;
+        }
+    }
+
+    final Activity activity;
+    final DragLayout layout;
+    final CountingView mainContent;
+    final DraggedDrawer drawer;
+    final CountingView drawerContent;
+    final ManualFrameSource frames = new ManualFrameSource(EVENT_INTERVAL);
+
+    private long mTime = 1000;
+    private Canvas mCanvas;
+
+    DrawerTestHarness() {
+        this(DRAWER_WIDTH);
+    }
+
+    /**
+     * @param drawerWidth   width of the drawer content, {@link #WIDTH} to cover the whole screen
+     */
+    DrawerTestHarness(int drawerWidth) {
+        activity = Robolectric.buildActivity(Activity.class).create().start().resume().visible().get();
+        layout = new DragLayout(activity);
+        layout.setFrameSource(frames);
+        mainContent = new CountingView(activity);
+        layout.addView(mainContent, new DragLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
+        final View handle = new View(activity);
+        handle.setLayoutParams(new android.widget.LinearLayout.LayoutParams(HANDLE_WIDTH, 80));
+        drawerContent = new CountingView(activity);
+        drawer = new DraggedDrawer(activity, DraggedDrawer.DRAWER_LEFT, handle, drawerContent);
+        drawer.setEdgeDraggable(true);
+        layout.addView(drawer, new DragLayout.LayoutParams(drawerWidth+HANDLE_WIDTH, HEIGHT));
+
+        activity.setContentView(layout);
+        layout();
+    }
+
+    /**
+     * Measure and lay out the layout at {@link #WIDTH} x {@link #HEIGHT}
+     */
+    void layout() {
+        layout.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        layout.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    /**
+     * Run frames until the drawer stops moving, laying out after each like the UI thread would
+     * @return number of frames
+     */
+    int settle() {
+        int count=0;
+        while(count<500 && frames.doFrame()) {
+            layout();
+            count++;
+        }
+        layout();
+        return count;
+    }
+
+    /**
+     * Draw the layout into an offscreen bitmap
+     */
+    void draw() {
+        if(mCanvas==null)
+            mCanvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+        layout.draw(mCanvas);
+    }
+
+    float getOffset() {
+        return layout.getDrawerViewOffset(drawer);
+    }
+
+    /**
+     * A drag along the y center of the screen
+     * @param fromX     x of the down event
+     * @param toX       x of the up event
+     * @param moves     number of moves in between
+     * @param interval  time between events, in ms.  Shorter intervals make a fling.
+     */
+    MotionEvent[] drag(int fromX, int toX, int moves, int interval) {
+        final ArrayList<MotionEvent> events = new ArrayList<MotionEvent>();
+        final long down = mTime;
+        final int y = HEIGHT/2;
+        events.add(MotionEvent.obtain(down, mTime, MotionEvent.ACTION_DOWN, fromX, y, 0));
+        for(int i=1; i<=moves; i++) {
+            mTime += interval;
+            events.add(MotionEvent.obtain(down, mTime, MotionEvent.ACTION_MOVE, fromX+(toX-fromX)*i/moves, y, 0));
+        }
+        mTime += interval;
+        events.add(MotionEvent.obtain(down, mTime, MotionEvent.ACTION_UP, toX, y, 0));
+        mTime += interval;
+        return events.toArray(new MotionEvent[events.size()]);
+    }
+
+    /**
+     * A slow drag from the left edge
+     * @param distance  distance to drag
+     * @param moves     number of moves
+     */
+    MotionEvent[] edgeDrag(int distance, int moves) {
+        return drag(1, 1+distance, moves, EVENT_INTERVAL);
+    }
+
+    /**
+     * A fast drag which ends in a fling
+     */
+    MotionEvent[] fling(int fromX, int toX, int moves) {
+        return drag(fromX, toX, moves, 4);
+    }
+
+    /**
+     * A down and up without moving
+     */
+    MotionEvent[] tap(int x, int y) {
+        final long down = mTime;
+        mTime += 50;
+        final MotionEvent[] events = new MotionEvent[] {
+                MotionEvent.obtain(down, down, MotionEvent.ACTION_DOWN, x, y, 0),
+                MotionEvent.obtain(down, mTime, MotionEvent.ACTION_UP, x, y, 0)
+        };
+        mTime += EVENT_INTERVAL;
+        return events;
+    }
+
+    /**
+     * @return x of the closed drawer's handle center
+     */
+    int getHandleX() {
+        return HANDLE_WIDTH/2;
+    }
+
+    /**
+     * Dispatch events through the view hierarchy, as the window would, and recycle them
+     */
+    void dispatch(MotionEvent[] events) {
+        for(int i=0; i<events.length; i++)
+            dispatch(events[i]);
+    }
+
+    boolean dispatch(MotionEvent event) {
+        try {
+            return layout.dispatchTouchEvent(event);
+        } finally {
+            event.recycle();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.kedzie.drawer;
+
+import android.view.MotionEvent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Time {@link DragLayout#onInterceptTouchEvent(MotionEvent)} spends on each move of a scroll in
+ * the middle of the content, far from the drawer, its handle and the edges, with and without
+ * the gesture being rejected on the down.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk=18)
+public class FastRejectBenchmark {
+    private static final int ITERATIONS = 20000;
+
+    @Test
+    public void contentScrollMove() {
+        final double routed = measureScroll(false);
+        final double rejected = measureScroll(true);
+        Benchmark.printSaving("fast reject saving per move", routed, rejected);
+    }
+
+    private double measureScroll(boolean fastReject) {
+        final DrawerTestHarness harness = new DrawerTestHarness();
+        final DragLayout layout = harness.layout;
+        layout.setFastRejectEnabled(fastReject);
+        layout.resetMetrics();
+        final int x = DrawerTestHarness.WIDTH/2;
+        final int y = DrawerTestHarness.HEIGHT/2;
+        final MotionEvent down = MotionEvent.obtain(0, 0, MotionEvent.ACTION_DOWN, x, y, 0);
+        //a vertical scroll past the touch slop, back and forth
+        final MotionEvent[] moves = new MotionEvent[] {
+                MotionEvent.obtain(0, 16, MotionEvent.ACTION_MOVE, x, y+60, 0),
+                MotionEvent.obtain(0, 32, MotionEvent.ACTION_MOVE, x, y+70, 0)
+        };
+        final MotionEvent up = MotionEvent.obtain(0, 48, MotionEvent.ACTION_UP, x, y+70, 0);
+        assertFalse(layout.onInterceptTouchEvent(down));
+
+        final double nsPerMove = Benchmark.measure(fastReject ? "intercept move, rejected" : "intercept move, routed to helpers",
+                ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iterations) {
+                int intercepted=0;
+                for(int i=0; i<iterations; i++)
+                    if(layout.onInterceptTouchEvent(moves[i&1]))
+                        intercepted++;
+                Benchmark.consume(intercepted);
+            }
+        });
+        assertEquals(fastReject ? (Benchmark.WARM_UP_ROUNDS+Benchmark.ROUNDS)*ITERATIONS : 0,
+                layout.getMetrics().getRejectedEvents());
+        layout.onInterceptTouchEvent(up);
+        down.recycle();
+        moves[0].recycle();
+        moves[1].recycle();
+        up.recycle();
+        return nsPerMove;
+    }
+}
@@ -0,0 +1,59 @@
+package com.kedzie.drawer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk=18)
+public class GestureReplayTest {
+
+    /**
+     * Gestures recorded from one layout leave a fresh layout in the same states when replayed
+     */
+    @Test
+    public void replayReproducesRecordedGestures() throws IOException {
+        final DrawerTestHarness recording = new DrawerTestHarness();
+        final ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        final GestureRecorder recorder = new GestureRecorder(trace);
+        recording.layout.setGestureRecorder(recorder);
+        recording.dispatch(recording.edgeDrag(150, 8));
+        recording.settle();
+        recording.dispatch(recording.tap(DrawerTestHarness.WIDTH-20, DrawerTestHarness.HEIGHT/2));
+        recording.settle();
+        recording.layout.setGestureRecorder(null);
+        recorder.close();
+        assertTrue(recorder.getEventCount()>0);
+
+        final DrawerTestHarness replaying = new DrawerTestHarness();
+        final GestureReplayer.ReplayReport report = new GestureReplayer(replaying.layout)
+                .replay(new ByteArrayInputStream(trace.toByteArray()));
+
+        assertEquals(recorder.getEventCount(), report.getEventCount());
+        assertEquals(1, report.getDrawerCount());
+        int opened=-1;
+        for(int i=0; i<report.getEventCount(); i++) {
+            assertTrue(report.getDispatchTime(i)>=0);
+            if(opened==-1 && report.getDrawerOffset(i, 0)>0)
+                opened=i;
+        }
+        assertTrue("Edge drag did not move the drawer", opened>=0);
+        //the tap on the scrim starts closing the drawer
+        final int last = report.getEventCount()-1;
+        assertTrue(report.isHandled(last));
+        assertEquals(DraggedDrawer.STATE_SETTLING, report.getLayoutState(last));
+    }
+
+    @Test(expected=IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        final DrawerTestHarness harness = new DrawerTestHarness();
+        new GestureReplayer(harness.layout).replay(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6}));
+    }
+}
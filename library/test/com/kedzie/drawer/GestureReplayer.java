@@ -0,0 +1,273 @@
+package com.kedzie.drawer;
+
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Feeds a trace written by {@link GestureRecorder} back into a {@link DragLayout}, calling
+ * {@link DragLayout#onInterceptTouchEvent(MotionEvent)} or {@link DragLayout#onTouchEvent(MotionEvent)}
+ * just as they were called when recording.  Measures each dispatch and the resulting drawer
+ * states.  Used by the tests under Robolectric; combine with a {@link ManualFrameSource}
+ * to also settle drawers deterministically between events.
+ */
+class GestureReplayer {
+
+    /**
+     * Measurements of a replay, one entry per event
+     */
+    static class ReplayReport {
+        private final int mDrawerCount;
+        private int mEventCount;
+        private int[] mTargets = new int[64];
+        private int[] mActions = new int[64];
+        private boolean[] mHandled = new boolean[64];
+        private long[] mDispatchTimes = new long[64];
+        private long[] mAllocations = new long[64];
+        private int[] mLayoutStates = new int[64];
+        private int[] mDrawerStates;
+        private float[] mDrawerOffsets;
+
+        ReplayReport(int drawerCount) {
+            mDrawerCount = drawerCount;
+            mDrawerStates = new int[64*drawerCount];
+            mDrawerOffsets = new float[64*drawerCount];
+        }
+
+        private void ensureCapacity() {
+            if(mEventCount<mTargets.length)
+                return;
+            final int size = mTargets.length*2;
+            mTargets = Arrays.copyOf(mTargets, size);
+            mActions = Arrays.copyOf(mActions, size);
+            mHandled = Arrays.copyOf(mHandled, size);
+            mDispatchTimes = Arrays.copyOf(mDispatchTimes, size);
+            mAllocations = Arrays.copyOf(mAllocations, size);
+            mLayoutStates = Arrays.copyOf(mLayoutStates, size);
+            mDrawerStates = Arrays.copyOf(mDrawerStates, size*mDrawerCount);
+            mDrawerOffsets = Arrays.copyOf(mDrawerOffsets, size*mDrawerCount);
+        }
+
+        public int getEventCount() {
+            return mEventCount;
+        }
+
+        /**
+         * Number of drawers whose state is reported, in child order of the layout
+         */
+        public int getDrawerCount() {
+            return mDrawerCount;
+        }
+
+        /**
+         * @return {@link GestureRecorder#TARGET_INTERCEPT} or {@link GestureRecorder#TARGET_TOUCH}
+         */
+        public int getTarget(int event) {
+            return mTargets[event];
+        }
+
+        public int getAction(int event) {
+            return mActions[event];
+        }
+
+        /**
+         * @return value returned by the dispatch
+         */
+        public boolean isHandled(int event) {
+            return mHandled[event];
+        }
+
+        /**
+         * @return time spent in the dispatch, in ns
+         */
+        public long getDispatchTime(int event) {
+            return mDispatchTimes[event];
+        }
+
+        /**
+         * @return bytes allocated by the dispatch, or -1 if the runtime doesn't count allocations
+         * @see AllocationCounter
+         */
+        public long getAllocatedBytes(int event) {
+            return mAllocations[event];
+        }
+
+        /**
+         * @return {@link DragLayout#getDrawerState()} after the dispatch
+         */
+        public int getLayoutState(int event) {
+            return mLayoutStates[event];
+        }
+
+        /**
+         * @return {@link DraggedDrawer#getDrawerState()} of a drawer after the dispatch
+         */
+        public int getDrawerState(int event, int drawer) {
+            return mDrawerStates[event*mDrawerCount+drawer];
+        }
+
+        /**
+         * @return offset of a drawer after the dispatch, from 0-1
+         */
+        public float getDrawerOffset(int event, int drawer) {
+            return mDrawerOffsets[event*mDrawerCount+drawer];
+        }
+
+        /**
+         * @return total time spent dispatching, in ns
+         */
+        public long getTotalDispatchTime() {
+            long total=0;
+            for(int i=0; i<mEventCount; i++)
+                total+=mDispatchTimes[i];
+            return total;
+        }
+
+        /**
+         * @return longest dispatch, in ns
+         */
+        public long getMaxDispatchTime() {
+            long max=0;
+            for(int i=0; i<mEventCount; i++)
+                max=Math.max(max, mDispatchTimes[i]);
+            return max;
+        }
+
+        /**
+         * @return total bytes allocated by all dispatches, or -1 if not counted
+         */
+        public long getTotalAllocatedBytes() {
+            long total=0;
+            for(int i=0; i<mEventCount; i++) {
+                if(mAllocations[i]<0)
+                    return -1;
+                total+=mAllocations[i];
+            }
+            return total;
+        }
+    }
+
+    private final DragLayout mLayout;
+    private final DraggedDrawer[] mDrawers;
+
+    /**
+     * @param layout    layout to replay into.  It should be measured and laid out.
+     */
+    GestureReplayer(DragLayout layout) {
+        mLayout = layout;
+        int count=0;
+        for(int i=0; i<layout.getChildCount(); i++)
+            if(layout.getChildAt(i) instanceof DraggedDrawer)
+                count++;
+        mDrawers = new DraggedDrawer[count];
+        count=0;
+        for(int i=0; i<layout.getChildCount(); i++) {
+            final View child = layout.getChildAt(i);
+            if(child instanceof DraggedDrawer)
+                mDrawers[count++] = (DraggedDrawer)child;
+        }
+    }
+
+    /**
+     * Replay a whole trace
+     * @param in    stream written by a {@link GestureRecorder}.  Not closed.
+     * @return measurements of every event
+     * @throws IOException if the trace cannot be read or is not a gesture trace
+     */
+    ReplayReport replay(InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if(data.readInt()!=GestureRecorder.MAGIC)
+            throw new IOException("Not a gesture trace");
+        final int version = data.readShort();
+        if(version!=GestureRecorder.VERSION)
+            throw new IOException("Unsupported gesture trace version " + version);
+
+        final ReplayReport report = new ReplayReport(mDrawers.length);
+        while(true) {
+            final int target;
+            try {
+                target = data.readByte();
+            } catch(EOFException e) {
+                break;
+            }
+            final MotionEvent ev = readEvent(data);
+            try {
+                dispatch(report, ev, target);
+            } finally {
+                ev.recycle();
+            }
+        }
+        return report;
+    }
+
+    private void dispatch(ReplayReport report, MotionEvent ev, int target) {
+        final long allocBefore = AllocationCounter.getAllocatedBytes();
+        final long start = System.nanoTime();
+        final boolean handled = target==GestureRecorder.TARGET_INTERCEPT
+                ? mLayout.onInterceptTouchEvent(ev) : mLayout.onTouchEvent(ev);
+        final long time = System.nanoTime()-start;
+        final long allocated = AllocationCounter.getAllocatedSince(allocBefore);
+
+        report.ensureCapacity();
+        final int index = report.mEventCount++;
+        report.mTargets[index] = target;
+        report.mActions[index] = ev.getAction();
+        report.mHandled[index] = handled;
+        report.mDispatchTimes[index] = time;
+        report.mAllocations[index] = allocated;
+        report.mLayoutStates[index] = mLayout.getDrawerState();
+        for(int d=0; d<mDrawers.length; d++) {
+            report.mDrawerStates[index*mDrawers.length+d] = mDrawers[d].getDrawerState();
+            report.mDrawerOffsets[index*mDrawers.length+d] = mLayout.getDrawerViewOffset(mDrawers[d]);
+        }
+    }
+
+    private static MotionEvent readEvent(DataInputStream data) throws IOException {
+        final int action = data.readInt();
+        final long downTime = data.readLong();
+        final int metaState = data.readInt();
+        final int buttonState = data.readInt();
+        final int edgeFlags = data.readInt();
+        final int source = data.readInt();
+        final int flags = data.readInt();
+        final int deviceId = data.readInt();
+        final float xPrecision = data.readFloat();
+        final float yPrecision = data.readFloat();
+        final int pointerCount = data.readByte();
+        final MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[pointerCount];
+        final MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[pointerCount];
+        for(int p=0; p<pointerCount; p++) {
+            properties[p] = new MotionEvent.PointerProperties();
+            properties[p].id = data.readByte();
+            properties[p].toolType = data.readByte();
+            coords[p] = new MotionEvent.PointerCoords();
+        }
+        final int historySize = data.readShort();
+        MotionEvent ev = null;
+        for(int h=0; h<=historySize; h++) {
+            final long eventTime = downTime+data.readInt();
+            for(int p=0; p<pointerCount; p++) {
+                coords[p].x = data.readFloat();
+                coords[p].y = data.readFloat();
+                coords[p].pressure = data.readFloat();
+                coords[p].size = data.readFloat();
+            }
+            if(ev==null && pointerCount==1 && historySize==0) {
+                //the simple form, which Robolectric's shadow fully supports
+                ev = MotionEvent.obtain(downTime, eventTime, action, coords[0].x, coords[0].y, metaState);
+                ev.setSource(source);
+            } else if(ev==null)
+                ev = MotionEvent.obtain(downTime, eventTime, action, pointerCount, properties, coords,
+                        metaState, buttonState, xPrecision, yPrecision, deviceId, edgeFlags, source, flags);
+            else
+                ev.addBatch(eventTime, coords, metaState);
+        }
+        return ev;
+    }
+}
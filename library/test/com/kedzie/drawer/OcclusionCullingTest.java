@@ -0,0 +1,75 @@
+package com.kedzie.drawer;
+
+import android.graphics.Color;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts the pixels drawn for a frame with a drawer covering the whole screen, i.e. the overdraw
+ * occlusion culling saves.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk=18)
+public class OcclusionCullingTest {
+    private static final long SCREEN = (long) DrawerTestHarness.WIDTH*DrawerTestHarness.HEIGHT;
+
+    private DrawerTestHarness mHarness;
+
+    @Before
+    public void setUp() {
+        mHarness = new DrawerTestHarness(DrawerTestHarness.WIDTH);
+        mHarness.drawerContent.setBackgroundColor(Color.BLUE);
+        mHarness.layout.openDrawer(mHarness.drawer);
+        mHarness.settle();
+        assertEquals(1f, mHarness.getOffset(), 0f);
+    }
+
+    /**
+     * @return pixels drawn by the content views for one frame, in screens
+     */
+    private float drawFrame() {
+        mHarness.mainContent.reset();
+        mHarness.drawerContent.reset();
+        mHarness.draw();
+        assertEquals(1, mHarness.drawerContent.draws);
+        return (float) (mHarness.mainContent.drawnPixels+mHarness.drawerContent.drawnPixels)/SCREEN;
+    }
+
+    @Test
+    public void openOpaqueDrawerHidesContent() {
+        assertTrue(mHarness.drawer.isOpaqueContent());
+        assertEquals(1f, drawFrame(), 0f);
+        assertEquals(0, mHarness.mainContent.draws);
+    }
+
+    @Test
+    public void overdrawWithoutCulling() {
+        final float culled = drawFrame();
+        mHarness.layout.setOcclusionCullingEnabled(false);
+        final float drawn = drawFrame();
+        assertEquals(2f, drawn, 0f);
+        assertEquals(1f, drawn-culled, 0f);
+    }
+
+    @Test
+    public void translucentBackgroundIsNotOpaque() {
+        mHarness.drawerContent.setBackgroundColor(0x800000ff);
+        assertFalse(mHarness.drawer.isOpaqueContent());
+        assertEquals(2f, drawFrame(), 0f);
+    }
+
+    @Test
+    public void declaredOpacityWins() {
+        mHarness.drawer.setOpaqueContent(false);
+        assertEquals(2f, drawFrame(), 0f);
+        mHarness.drawerContent.setBackgroundColor(0x800000ff);
+        mHarness.drawer.setOpaqueContent(true);
+        assertEquals(1f, drawFrame(), 0f);
+    }
+}
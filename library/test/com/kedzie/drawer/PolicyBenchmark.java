@@ -0,0 +1,102 @@
+package com.kedzie.drawer;
+
+import org.junit.Test;
+
+/**
+ * Time the per-event math of a drag move, clamping the new position and turning it into a
+ * slide offset, through the {@link DragBounds} each drawer's callback takes from its
+ * {@link OrientationPolicy} on layout, and through the switch on the drawer type it replaced.
+ * <p>
+ * Each variant is measured for a layout with a single drawer type and for drawers on all four
+ * sides, where the callbacks of DragLayout are shared by drawers of four types.  Sizes are read
+ * from fields, like the callbacks read them from the views, so neither variant folds them into
+ * constants.
+ */
+public class PolicyBenchmark {
+    private static final int ITERATIONS = 100000;
+
+    private static final int[] LEFT_ONLY = { DraggedDrawer.DRAWER_LEFT };
+    private static final int[] ALL_SIDES = { DraggedDrawer.DRAWER_LEFT, DraggedDrawer.DRAWER_RIGHT,
+            DraggedDrawer.DRAWER_TOP, DraggedDrawer.DRAWER_BOTTOM };
+
+    private int mParentWidth = 480;
+    private int mParentHeight = 800;
+    private int mSize = 224;
+    private int mHandleSize = 24;
+
+    @Test
+    public void dragMove() {
+        final double boundsOne = measureBounds("bounds, one drawer type", LEFT_ONLY);
+        final double switchOne = measureSwitch("switch, one drawer type", LEFT_ONLY);
+        final double boundsFour = measureBounds("bounds, four drawer types", ALL_SIDES);
+        final double switchFour = measureSwitch("switch, four drawer types", ALL_SIDES);
+        Benchmark.printSaving("bounds saving, one drawer type", switchOne, boundsOne);
+        Benchmark.printSaving("bounds saving, four drawer types", switchFour, boundsFour);
+    }
+
+    private double measureBounds(String name, int[] types) {
+        final DragBounds[] bounds = new DragBounds[types.length];
+        for(int i=0; i<types.length; i++) {
+            final OrientationPolicy policy = OrientationPolicy.forType(types[i]);
+            bounds[i] = new DragBounds();
+            bounds[i].update(policy, mSize, mHandleSize, policy.getParentSize(mParentWidth, mParentHeight));
+        }
+        return Benchmark.measure(name, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iterations) {
+                float sum=0;
+                for(int i=0; i<iterations; i++) {
+                    final DragBounds drawer = bounds[i%bounds.length];
+                    sum += drawer.getOffset(drawer.clamp(i%mParentWidth - mSize));
+                }
+                Benchmark.consume((long) sum);
+            }
+        });
+    }
+
+    private double measureSwitch(String name, final int[] types) {
+        return Benchmark.measure(name, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iterations) {
+                float sum=0;
+                for(int i=0; i<iterations; i++) {
+                    final int type = types[i%types.length];
+                    sum += offsetForPosition(type, clamp(type, i%mParentWidth - mSize));
+                }
+                Benchmark.consume((long) sum);
+            }
+        });
+    }
+
+    /**
+     * The clamp of the DragLayout callbacks before the policies
+     */
+    private int clamp(int type, int position) {
+        switch(type) {
+            case DraggedDrawer.DRAWER_LEFT:
+                return Math.max(mHandleSize-mSize, Math.min(position, 0));
+            case DraggedDrawer.DRAWER_RIGHT:
+                return Math.max(mParentWidth-mSize, Math.min(position, mParentWidth-mHandleSize));
+            case DraggedDrawer.DRAWER_TOP:
+                return Math.max(mHandleSize-mSize, Math.min(position, 0));
+            default:
+                return Math.max(mParentHeight-mSize, Math.min(position, mParentHeight-mHandleSize));
+        }
+    }
+
+    /**
+     * The offset math of onViewPositionChanged before the policies
+     */
+    private float offsetForPosition(int type, int position) {
+        final int contentSize = mSize-mHandleSize;
+        switch(type) {
+            case DraggedDrawer.DRAWER_LEFT:
+            case DraggedDrawer.DRAWER_TOP:
+                return (float) (contentSize + position) / contentSize;
+            case DraggedDrawer.DRAWER_RIGHT:
+                return (float) (mParentWidth - position - mHandleSize) / contentSize;
+            default:
+                return (float) (mParentHeight - position - mHandleSize) / contentSize;
+        }
+    }
+}